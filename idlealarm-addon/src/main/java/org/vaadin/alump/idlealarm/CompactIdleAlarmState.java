@@ -0,0 +1,312 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.vaadin.shared.communication.URLReference;
+import com.vaadin.shared.ui.ContentMode;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+import org.vaadin.alump.idlealarm.client.shared.TimeoutAction;
+
+/**
+ * Server side state of IdleAlarm, serialized compactly for session replication. Only values that differ from the
+ * configuration template are written, and strings read are interned, as same messages and style names are used by
+ * all sessions. Boolean values are written as bits of mask. Server times are not written, as those are updated before
+ * every response.
+ * <p>
+ * Form starts with version of format, so nodes of rolling deployment reject states written by newer nodes instead of
+ * misreading them. Version has to be increased when fields are added to or removed from the form.
+ */
+class CompactIdleAlarmState extends IdleAlarmState implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Version of serialized form
+     */
+    static final int FORMAT_VERSION = 1;
+
+    private static final int SECONDS_BEFORE = 1;
+    private static final int MESSAGE = 1 << 1;
+    private static final int CONTENT_MODE = 1 << 2;
+    private static final int COUNTDOWN = 1 << 3;
+    private static final int REDIRECT_URL = 1 << 4;
+    private static final int CLOSE_ENABLED = 1 << 5;
+    private static final int CLOSE_CAPTION = 1 << 6;
+    private static final int TIMEOUT_ACTION = 1 << 7;
+    private static final int LIGHTWEIGHT_KEEP_ALIVE = 1 << 8;
+    private static final int ACTIVITY_KEEP_ALIVE = 1 << 9;
+    private static final int ACTIVITY_KEEP_ALIVE_WINDOW = 1 << 10;
+    private static final int ACTIVITY_KEEP_ALIVE_THRESHOLD = 1 << 11;
+    private static final int CROSS_TAB_SYNC = 1 << 12;
+    private static final int CROSS_TAB_KEY = 1 << 13;
+    private static final int STYLE_NAMES = 1 << 14;
+    private static final int BUTTONS = 1 << 15;
+    private static final int DISABLED = 1 << 16;
+    private static final int RESOURCES = 1 << 17;
+    private static final int EVENT_LISTENERS = 1 << 18;
+    private static final int PROFILE = 1 << 19;
+    private static final int WORKER_TIMER = 1 << 20;
+    private static final int REDIRECT_PREFETCH = 1 << 21;
+
+    // Template of values, not sent to client
+    private IdleAlarmConfig template = IdleAlarmConfig.DEFAULT;
+
+    public CompactIdleAlarmState() {
+    }
+
+    /**
+     * Copy values of given configuration template. Style names and buttons are shared with template.
+     * @param config Configuration template
+     */
+    void applyConfig(IdleAlarmConfig config) {
+        template = config;
+        secondsBefore = config.getSecondsBefore();
+        message = config.getMessage();
+        contentMode = config.getContentMode();
+        countdownTimeout = config.isCountdown();
+        timeoutRedirectURL = config.getRedirectURL();
+        redirectPrefetch = config.isRedirectPrefetch();
+        closeEnabled = config.isCloseButtonEnabled();
+        closeCaption = config.getCloseButtonCaption();
+        timeoutAction = config.getTimeoutAction();
+        lightweightKeepAlive = config.isLightweightKeepAlive();
+        activityKeepAlive = config.isActivityKeepAlive();
+        activityKeepAliveWindow = config.getActivityKeepAliveWindow();
+        activityKeepAliveThreshold = config.getActivityKeepAliveThreshold();
+        crossTabSync = config.isCrossTabSync();
+        workerTimer = config.isWorkerTimer();
+        styleNames = config.getStyleNames();
+        buttons = config.getButtons();
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        IdleAlarmConfig config = template;
+        int mask = 0;
+        mask |= secondsBefore != config.getSecondsBefore() ? SECONDS_BEFORE : 0;
+        mask |= !Objects.equals(message, config.getMessage()) ? MESSAGE : 0;
+        mask |= contentMode != config.getContentMode() ? CONTENT_MODE : 0;
+        mask |= countdownTimeout != config.isCountdown() ? COUNTDOWN : 0;
+        mask |= !Objects.equals(timeoutRedirectURL, config.getRedirectURL()) ? REDIRECT_URL : 0;
+        mask |= redirectPrefetch != config.isRedirectPrefetch() ? REDIRECT_PREFETCH : 0;
+        mask |= closeEnabled != config.isCloseButtonEnabled() ? CLOSE_ENABLED : 0;
+        mask |= !Objects.equals(closeCaption, config.getCloseButtonCaption()) ? CLOSE_CAPTION : 0;
+        mask |= timeoutAction != config.getTimeoutAction() ? TIMEOUT_ACTION : 0;
+        mask |= lightweightKeepAlive != config.isLightweightKeepAlive() ? LIGHTWEIGHT_KEEP_ALIVE : 0;
+        mask |= activityKeepAlive != config.isActivityKeepAlive() ? ACTIVITY_KEEP_ALIVE : 0;
+        mask |= activityKeepAliveWindow != config.getActivityKeepAliveWindow() ? ACTIVITY_KEEP_ALIVE_WINDOW : 0;
+        mask |= activityKeepAliveThreshold != config.getActivityKeepAliveThreshold()
+                ? ACTIVITY_KEEP_ALIVE_THRESHOLD : 0;
+        mask |= crossTabSync != config.isCrossTabSync() ? CROSS_TAB_SYNC : 0;
+        mask |= crossTabKey != null ? CROSS_TAB_KEY : 0;
+        mask |= workerTimer != config.isWorkerTimer() ? WORKER_TIMER : 0;
+        // Copies are made only when modified
+        mask |= styleNames != config.getStyleNames() ? STYLE_NAMES : 0;
+        mask |= buttons != config.getButtons() ? BUTTONS : 0;
+        mask |= !enabled ? DISABLED : 0;
+        mask |= resources != null && !resources.isEmpty() ? RESOURCES : 0;
+        mask |= registeredEventListeners != null ? EVENT_LISTENERS : 0;
+        mask |= profile != null ? PROFILE : 0;
+
+        out.writeByte(FORMAT_VERSION);
+        out.writeObject(config);
+        out.writeInt(maxInactiveInterval);
+        out.writeInt(mask);
+        if(isSet(mask, SECONDS_BEFORE)) {
+            out.writeInt(secondsBefore);
+        }
+        if(isSet(mask, MESSAGE)) {
+            out.writeObject(message);
+        }
+        if(isSet(mask, CONTENT_MODE)) {
+            writeEnum(out, contentMode);
+        }
+        if(isSet(mask, REDIRECT_URL)) {
+            out.writeObject(timeoutRedirectURL);
+        }
+        if(isSet(mask, CLOSE_CAPTION)) {
+            out.writeObject(closeCaption);
+        }
+        if(isSet(mask, TIMEOUT_ACTION)) {
+            writeEnum(out, timeoutAction);
+        }
+        if(isSet(mask, ACTIVITY_KEEP_ALIVE_WINDOW)) {
+            out.writeInt(activityKeepAliveWindow);
+        }
+        if(isSet(mask, ACTIVITY_KEEP_ALIVE_THRESHOLD)) {
+            out.writeInt(activityKeepAliveThreshold);
+        }
+        if(isSet(mask, CROSS_TAB_KEY)) {
+            out.writeObject(crossTabKey);
+        }
+        if(isSet(mask, STYLE_NAMES)) {
+            writeStrings(out, styleNames);
+        }
+        if(isSet(mask, BUTTONS)) {
+            writeButtons(out, buttons);
+        }
+        if(isSet(mask, RESOURCES)) {
+            out.writeObject(resources);
+        }
+        if(isSet(mask, EVENT_LISTENERS)) {
+            out.writeObject(registeredEventListeners);
+        }
+        if(isSet(mask, PROFILE)) {
+            out.writeObject(profile);
+            writeStrings(out, profileOverrides);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        readVersion(in, FORMAT_VERSION, CompactIdleAlarmState.class);
+        applyConfig((IdleAlarmConfig)in.readObject());
+        maxInactiveInterval = in.readInt();
+        int mask = in.readInt();
+        if(isSet(mask, SECONDS_BEFORE)) {
+            secondsBefore = in.readInt();
+        }
+        if(isSet(mask, MESSAGE)) {
+            message = readString(in);
+        }
+        if(isSet(mask, CONTENT_MODE)) {
+            contentMode = readEnum(in, ContentMode.values());
+        }
+        countdownTimeout ^= isSet(mask, COUNTDOWN);
+        if(isSet(mask, REDIRECT_URL)) {
+            timeoutRedirectURL = readString(in);
+        }
+        redirectPrefetch ^= isSet(mask, REDIRECT_PREFETCH);
+        closeEnabled ^= isSet(mask, CLOSE_ENABLED);
+        if(isSet(mask, CLOSE_CAPTION)) {
+            closeCaption = readString(in);
+        }
+        if(isSet(mask, TIMEOUT_ACTION)) {
+            timeoutAction = readEnum(in, TimeoutAction.values());
+        }
+        lightweightKeepAlive ^= isSet(mask, LIGHTWEIGHT_KEEP_ALIVE);
+        activityKeepAlive ^= isSet(mask, ACTIVITY_KEEP_ALIVE);
+        if(isSet(mask, ACTIVITY_KEEP_ALIVE_WINDOW)) {
+            activityKeepAliveWindow = in.readInt();
+        }
+        if(isSet(mask, ACTIVITY_KEEP_ALIVE_THRESHOLD)) {
+            activityKeepAliveThreshold = in.readInt();
+        }
+        crossTabSync ^= isSet(mask, CROSS_TAB_SYNC);
+        if(isSet(mask, CROSS_TAB_KEY)) {
+            crossTabKey = readString(in);
+        }
+        workerTimer ^= isSet(mask, WORKER_TIMER);
+        if(isSet(mask, STYLE_NAMES)) {
+            styleNames = readStrings(in);
+        }
+        if(isSet(mask, BUTTONS)) {
+            buttons = readButtons(in);
+        }
+        enabled = !isSet(mask, DISABLED);
+        if(isSet(mask, RESOURCES)) {
+            resources = (Map<String,URLReference>)in.readObject();
+        }
+        if(isSet(mask, EVENT_LISTENERS)) {
+            registeredEventListeners = (Set<String>)in.readObject();
+        }
+        if(isSet(mask, PROFILE)) {
+            profile = readString(in);
+            profileOverrides = readStrings(in);
+        }
+    }
+
+    /**
+     * Read version of serialized form
+     * @param in Input
+     * @param supported Latest version supported by reader
+     * @param type Type of serialized form
+     * @return Version read
+     * @throws InvalidClassException If form was written in unknown version, eg. by newer node of cluster
+     */
+    static int readVersion(ObjectInput in, int supported, Class<?> type) throws IOException {
+        int version = in.readUnsignedByte();
+        if(version < 1 || version > supported) {
+            throw new InvalidClassException(type.getName(), "Unsupported format version " + version
+                    + ", supported versions are 1-" + supported);
+        }
+        return version;
+    }
+
+    static boolean isSet(int mask, int field) {
+        return (mask & field) != 0;
+    }
+
+    /**
+     * Read string, interned as same strings are used by most sessions
+     */
+    static String readString(ObjectInput in) throws IOException, ClassNotFoundException {
+        String value = (String)in.readObject();
+        return value == null ? null : value.intern();
+    }
+
+    static void writeEnum(ObjectOutput out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? -1 : value.ordinal());
+    }
+
+    static <T extends Enum<T>> T readEnum(ObjectInput in, T[] values) throws IOException {
+        int ordinal = in.readByte();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    static void writeStrings(ObjectOutput out, List<String> values) throws IOException {
+        out.writeInt(values == null ? -1 : values.size());
+        if(values != null) {
+            for(String value : values) {
+                out.writeObject(value);
+            }
+        }
+    }
+
+    static List<String> readStrings(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        if(size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for(int i = 0; i < size; ++i) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    static void writeButtons(ObjectOutput out, Map<Integer,ButtonState> buttons) throws IOException {
+        out.writeInt(buttons.size());
+        for(Map.Entry<Integer,ButtonState> entry : buttons.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeObject(entry.getValue().caption);
+            writeStrings(out, entry.getValue().styleNames);
+            out.writeObject(entry.getValue().prefetchURL);
+        }
+    }
+
+    static Map<Integer,ButtonState> readButtons(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        Map<Integer,ButtonState> buttons = new LinkedHashMap<>();
+        for(int i = 0; i < size; ++i) {
+            int id = in.readInt();
+            ButtonState button = new ButtonState();
+            button.caption = readString(in);
+            button.styleNames = readStrings(in);
+            button.prefetchURL = readString(in);
+            buttons.put(id, button);
+        }
+        return buttons;
+    }
+}
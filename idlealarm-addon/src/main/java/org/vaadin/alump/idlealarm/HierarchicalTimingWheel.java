@@ -0,0 +1,135 @@
+package org.vaadin.alump.idlealarm;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel used to track large amount of deadlines with constant time scheduling. Deadlines are
+ * rounded up to ticks, so items expire at most one tick late. Not thread safe, owner thread has to take care of all
+ * calls.
+ * @param <T> Type of items scheduled
+ */
+class HierarchicalTimingWheel<T> {
+
+    private static final class Node<T> {
+        private final T value;
+        private final long tick;
+        private Node<T> next;
+
+        private Node(T value, long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+    }
+
+    private final long origin;
+    private final long tickMillis;
+    private final int levels;
+    private final int slotBits;
+    private final int slotMask;
+    private final Node<T>[][] slots;
+
+    private long currentTick = 0;
+    private int size = 0;
+
+    /**
+     * Create new timing wheel
+     * @param tickMillis Length of tick in milliseconds
+     * @param levels Amount of levels in hierarchy
+     * @param slotBits Amount of slots per level, given as power of two
+     * @param nowMillis Current time in milliseconds, used as origin of ticks
+     */
+    @SuppressWarnings("unchecked")
+    HierarchicalTimingWheel(long tickMillis, int levels, int slotBits, long nowMillis) {
+        if(tickMillis < 1 || levels < 1 || slotBits < 1 || slotBits * levels > 62) {
+            throw new IllegalArgumentException("Invalid timing wheel dimensions");
+        }
+        this.origin = nowMillis;
+        this.tickMillis = tickMillis;
+        this.levels = levels;
+        this.slotBits = slotBits;
+        this.slotMask = (1 << slotBits) - 1;
+        this.slots = new Node[levels][1 << slotBits];
+    }
+
+    /**
+     * Schedule item to expire at given time. Deadlines in past will expire at next tick.
+     * @param value Item scheduled
+     * @param deadlineMillis Deadline in milliseconds
+     */
+    void schedule(T value, long deadlineMillis) {
+        long tick = (deadlineMillis - origin + tickMillis - 1) / tickMillis;
+        insert(new Node<>(value, Math.max(tick, currentTick + 1)));
+        ++size;
+    }
+
+    /**
+     * Advance wheel to given time. Expired items are given to consumer in deadline order (with tick precision).
+     * @param nowMillis Current time in milliseconds
+     * @param expired Consumer of expired items
+     */
+    void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = (nowMillis - origin) / tickMillis;
+        while(currentTick < targetTick) {
+            ++currentTick;
+
+            // Cascade from top to bottom, so items moved down can still land to slots cascaded at this tick
+            for(int level = levels - 1; level > 0; --level) {
+                if((currentTick & ((1L << (slotBits * level)) - 1)) == 0) {
+                    cascade(level, slotIndex(currentTick, level));
+                }
+            }
+
+            int index = slotIndex(currentTick, 0);
+            Node<T> node = slots[0][index];
+            slots[0][index] = null;
+            while(node != null) {
+                Node<T> next = node.next;
+                node.next = null;
+                if(node.tick <= currentTick) {
+                    --size;
+                    expired.accept(node.value);
+                } else {
+                    insert(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Amount of items scheduled
+     * @return Amount of items
+     */
+    int size() {
+        return size;
+    }
+
+    private void cascade(int level, int index) {
+        Node<T> node = slots[level][index];
+        slots[level][index] = null;
+        while(node != null) {
+            Node<T> next = node.next;
+            node.next = null;
+            insert(node);
+            node = next;
+        }
+    }
+
+    private void insert(Node<T> node) {
+        long delta = node.tick - currentTick;
+        int level = 0;
+        while(level < levels - 1 && delta >= (1L << (slotBits * (level + 1)))) {
+            ++level;
+        }
+
+        // Items beyond range of wheel are parked to furthest slot and re-evaluated when cascaded
+        long tick = Math.min(node.tick, currentTick + (1L << (slotBits * levels)) - 1);
+        int index = slotIndex(tick, level);
+        node.next = slots[level][index];
+        slots[level][index] = node;
+    }
+
+    private int slotIndex(long tick, int level) {
+        return (int)((tick >> (slotBits * level)) & slotMask);
+    }
+}
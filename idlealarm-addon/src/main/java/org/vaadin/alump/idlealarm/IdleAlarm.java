@@ -1,14 +1,19 @@
 package org.vaadin.alump.idlealarm;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import com.vaadin.server.AbstractExtension;
 import com.vaadin.server.Extension;
-import com.vaadin.server.Page;
 import com.vaadin.server.Resource;
+import com.vaadin.server.VaadinService;
 import com.vaadin.shared.MouseEventDetails;
 import com.vaadin.shared.ui.ContentMode;
+import com.vaadin.ui.ConnectorTracker;
 import com.vaadin.ui.UI;
 import org.vaadin.alump.idlealarm.client.shared.*;
 
@@ -27,41 +32,153 @@ public class IdleAlarm extends AbstractExtension {
             + IdleAlarmFormatting.SECS_TO_TIMEOUT
             + " seconds. Please click anywhere outside this notification to extend session.";
 
-    private Map<Integer,IdleClickListener> buttonListeners = new HashMap<>();
-    private AtomicInteger buttonCounter = new AtomicInteger(0);
-    //private AtomicInteger resourceCounter = new AtomicInteger(0);
+    private IdleAlarmConfig config;
+    // Shared with config until modified, serialized only when modified
+    private transient Map<Integer,IdleClickListener> buttonListeners;
+    private int buttonCounter;
+    private transient long lastSync = 0L;
+    // Seconds before may be limited by max inactive interval, requested value is used if interval grows later
+    private int requestedSecondsBefore;
+    // Client could not load profile of configuration, so all values are sent in state
+    private boolean profileUnavailable = false;
 
     protected IdleAlarm(UI ui) {
-        setMessage(DEFAULT_FORMATTING);
-        int maxInactiveInterval = IdleTimeoutServerUtil.resolveMaxInactiveInterval(ui);
+        IdleSessionController controller = IdleSessionController.get(ui);
+        int maxInactiveInterval = controller.getMaxInactiveInterval();
 
         extend(ui);
         getState().maxInactiveInterval = maxInactiveInterval;
-        if(maxInactiveInterval <= getState().secondsBefore) {
-            int value = maxInactiveInterval - 5;
-            setSecondsBefore(value > 0 ? value : 1);
-        }
+        setConfig(controller.getConfig());
 
         // Register dummy implementation to allow reset timeout calls
         registerRpc(new IdleAlarmServerRpc() {
             @Override
             public void resetIdleTimeout() {
-                //ignored, call is just to reset session timeouts
+                long started = System.nanoTime();
+                IdleAlarmMetrics metrics = getMetrics();
+                metrics.keepAlive();
+                // call itself resets session timeouts, reaper (if installed) just needs to know about it once
+                if(IdleSessionController.get(getSession()).keepAlive(System.currentTimeMillis())) {
+                    IdleSessionReaper.recordActivity(getSession());
+                }
+                metrics.recordRpc(System.nanoTime() - started);
             }
 
             @Override
             public void buttonClicked(int id, MouseEventDetails details) {
-                Optional.ofNullable(buttonListeners.get(id)).ifPresent(listener -> {
-                    IdleClickEvent event = new IdleClickEvent(IdleAlarm.this, details, id);
-                    listener.buttonClick(event);
-                });
+                long started = System.nanoTime();
+                IdleAlarmMetrics metrics = getMetrics();
+                metrics.buttonClicked();
+                try {
+                    Optional.ofNullable(buttonListeners.get(id)).ifPresent(listener -> {
+                        IdleClickEvent event = new IdleClickEvent(IdleAlarm.this, details, id);
+                        listener.buttonClick(event);
+                    });
+                } finally {
+                    metrics.recordRpc(System.nanoTime() - started);
+                }
+            }
+
+            @Override
+            public void warningShown() {
+                getMetrics().warningShown();
+            }
+
+            @Override
+            public void timeoutActionPerformed(TimeoutAction action) {
+                if(action != null) {
+                    getMetrics().timeoutAction(action);
+                }
+            }
+
+            @Override
+            public void profileUnavailable() {
+                profileUnavailable = true;
+                getState().profile = null;
+                getState().profileOverrides = null;
+                // Client has default values of state
+                getUI().getConnectorTracker().setDiffState(IdleAlarm.this, IdleAlarmProfile.DEFAULT_STATE);
             }
         });
     }
 
+    @Override
+    public void attach() {
+        super.attach();
+        IdleSessionController.get(getSession()).register(getUI(), this);
+        getMetrics().alarmAttached();
+    }
+
+    @Override
+    public void detach() {
+        IdleSessionController controller = IdleSessionController.find(getSession());
+        if(controller != null) {
+            controller.unregister(getUI(), this);
+        }
+
+        getMetrics().alarmDetached();
+        super.detach();
+    }
+
+    private IdleAlarmMetrics getMetrics() {
+        return IdleAlarmMetrics.get(getSession().getService());
+    }
+
     @Override
     public void beforeClientResponse(boolean initial) {
         super.beforeClientResponse(initial);
+
+        // Allows client to resolve deadline of session from server's clock. Responses to requests have just
+        // accessed the session, pushed responses report the last request.
+        long now = System.currentTimeMillis();
+        getState().serverLastAccess = VaadinService.getCurrentRequest() != null ? now
+                : getSession().getLastRequestTimestamp();
+        getState().serverTime = now;
+        lastSync = now;
+
+        if(getState(false).crossTabSync && getState(false).crossTabKey == null) {
+            getState().crossTabKey = IdleSessionController.get(getSession()).getCrossTabKey();
+        }
+
+        if(getState(false).lightweightKeepAlive) {
+            IdleKeepAliveFilter.publishToken(getSession());
+        }
+
+        if(initial) {
+            applyProfile();
+        }
+    }
+
+    /**
+     * Values of named configuration are loaded by client from static resource, so state is encoded against values of
+     * profile, and only values that differ from those are sent
+     */
+    private void applyProfile() {
+        IdleAlarmProfile profile = profileUnavailable ? null : config.getProfile();
+        IdleAlarmState state = getState();
+        if(profile == null) {
+            state.profile = null;
+            state.profileOverrides = null;
+            return;
+        }
+
+        ConnectorTracker connectorTracker = getUI().getConnectorTracker();
+        state.profile = profile.getKey();
+        state.profileOverrides = profile.resolveOverrides(state, connectorTracker);
+        connectorTracker.setDiffState(this, profile.getState());
+    }
+
+    /**
+     * Get time when deadline was last sent to client
+     * @return Time in milliseconds, or zero if not sent
+     */
+    long getLastSync() {
+        return lastSync;
+    }
+
+    @Override
+    protected IdleAlarmState createState() {
+        return new CompactIdleAlarmState();
     }
 
     @Override
@@ -97,10 +214,9 @@ public class IdleAlarm extends AbstractExtension {
             throw new IllegalArgumentException("UI can not be null");
         }
 
-        for(Extension extension : ui.getExtensions()) {
-            if(extension instanceof IdleAlarm) {
-                return (IdleAlarm)extension;
-            }
+        IdleAlarm idleAlarm = find(ui);
+        if(idleAlarm != null) {
+            return idleAlarm;
         }
 
         return new IdleAlarm(ui);
@@ -122,18 +238,67 @@ public class IdleAlarm extends AbstractExtension {
             throw new IllegalArgumentException("UI can not be null");
         }
 
-        IdleAlarm idleAlarm = null;
-        for(Extension extension : ui.getExtensions()) {
-            if(extension instanceof IdleAlarm) {
-                idleAlarm = (IdleAlarm)extension;
-                break;
-            }
-        }
+        IdleAlarm idleAlarm = find(ui);
         if(idleAlarm != null) {
             ui.removeExtension(idleAlarm);
         }
     }
 
+    private static IdleAlarm find(UI ui) {
+        IdleSessionController controller = IdleSessionController.find(ui.getSession());
+        if(controller != null) {
+            return controller.find(ui);
+        }
+
+        // UIs without session are not registered
+        if(ui.getSession() == null) {
+            for (Extension extension : ui.getExtensions()) {
+                if (extension instanceof IdleAlarm) {
+                    return (IdleAlarm) extension;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get instance of IdleAlarm using given configuration template. Configuration will replace all values defined
+     * earlier.
+     * @param ui UI that is extended
+     * @param config Configuration template, can be shared by multiple UIs
+     * @return Instance of IdleAlarm
+     * @throws IllegalArgumentException If invalid UI given
+     * @throws IllegalStateException If given UI does not have valid max inactive interval defined
+     */
+    public static IdleAlarm get(UI ui, IdleAlarmConfig config) throws IllegalArgumentException, IllegalStateException {
+        return get(ui).setConfig(config);
+    }
+
+    /**
+     * Apply configuration template. Values of template are shared, and only values modified after this call are
+     * stored per IdleAlarm. Configuration will replace all values defined earlier.
+     * @param config Configuration template
+     * @return IdleAlarm instance to allow chaining of commands
+     */
+    public IdleAlarm setConfig(IdleAlarmConfig config) {
+        this.config = Objects.requireNonNull(config);
+
+        ((CompactIdleAlarmState)getState()).applyConfig(config);
+        requestedSecondsBefore = config.getSecondsBefore();
+        applySecondsBefore();
+        buttonListeners = config.getButtonListeners();
+        buttonCounter = config.getLastButtonId();
+        return this;
+    }
+
+    /**
+     * Get configuration template applied
+     * @return Configuration template
+     */
+    public IdleAlarmConfig getConfig() {
+        return config;
+    }
+
     /**
      * Set how many seconds before timeout warning will be shown
      * @param seconds Time in seconds
@@ -148,10 +313,42 @@ public class IdleAlarm extends AbstractExtension {
             throw new IllegalArgumentException("Given value " + seconds + " is larger or equal to timeout value "
                     + getState().maxInactiveInterval);
         }
+        requestedSecondsBefore = seconds;
         getState().secondsBefore = seconds;
         return this;
     }
 
+    /**
+     * Apply requested seconds before, limited below max inactive interval
+     */
+    private void applySecondsBefore() {
+        getState().secondsBefore = limitSecondsBefore(requestedSecondsBefore, getState(false).maxInactiveInterval);
+    }
+
+    /**
+     * Limit seconds before warning to given max inactive interval
+     * @param secondsBefore Requested seconds before timeout
+     * @param maxInactiveInterval Max inactive interval in seconds
+     * @return Seconds before timeout when warning is shown
+     */
+    static int limitSecondsBefore(int secondsBefore, int maxInactiveInterval) {
+        if(maxInactiveInterval <= secondsBefore) {
+            int value = maxInactiveInterval - 5;
+            return value > 0 ? value : 1;
+        }
+        return secondsBefore;
+    }
+
+    /**
+     * Called by session controller when max inactive interval of session changes. Client re-arms its timer when it
+     * receives the new value.
+     * @param maxInactiveInterval New interval in seconds
+     */
+    void updateMaxInactiveInterval(int maxInactiveInterval) {
+        getState().maxInactiveInterval = maxInactiveInterval;
+        applySecondsBefore();
+    }
+
     /**
      * Get how many seconds before timeout warning will be shown
      * @return Time in seconds
@@ -250,6 +447,29 @@ public class IdleAlarm extends AbstractExtension {
         return getState(false).timeoutRedirectURL;
     }
 
+    /**
+     * Prefetch redirect targets (redirect URL of timeout action and redirect buttons) when warning is shown, so that
+     * the final navigation is served from cache, and load of target is spread over the warning period instead of
+     * moment of timeout. Browser is also asked to preconnect to targets of other origins. Enabled by default;
+     * disable if targets must not be requested before navigation. Single redirect buttons can be excluded with
+     * {@link #addRedirectButton(String, Collection, String, boolean)}.
+     * @param enabled true to prefetch redirect targets
+     * @return This IdleAlarm to allow command chaining
+     */
+    public IdleAlarm setRedirectPrefetch(boolean enabled) {
+        getState().redirectPrefetch = enabled;
+        return this;
+    }
+
+    /**
+     * @see #setRedirectPrefetch(boolean)
+     *
+     * @return true if redirect targets are prefetched
+     */
+    public boolean isRedirectPrefetch() {
+        return getState(false).redirectPrefetch;
+    }
+
     /**
      * Shows/hides button for closing notification and resetting timer. Notice that notification can be also closed by
      * clicking outside of it (or also inside of it when no buttons). This just allows to have clear close button for
@@ -277,7 +497,8 @@ public class IdleAlarm extends AbstractExtension {
      * @return This IdleAlarm to allow command chaining
      */
     public IdleAlarm removeButtons() {
-        getState().buttons.clear();
+        getState().buttons = new LinkedHashMap<>();
+        buttonListeners = new HashMap<>();
         return this;
     }
 
@@ -299,14 +520,20 @@ public class IdleAlarm extends AbstractExtension {
      * @return This IdleAlarm to allow command chaining
      */
     public IdleAlarm addButton(String caption, Collection<String> styleNames, IdleClickListener listener) {
+        return addButton(caption, styleNames, listener, null);
+    }
+
+    private IdleAlarm addButton(String caption, Collection<String> styleNames, IdleClickListener listener,
+            String prefetchURL) {
         IdleAlarmState.ButtonState buttonState = new IdleAlarmState.ButtonState();
         buttonState.caption = caption;
         buttonState.styleNames = styleNames == null ? Collections.EMPTY_LIST : new ArrayList<>(styleNames);
+        buttonState.prefetchURL = prefetchURL;
 
-        int buttonId = buttonCounter.incrementAndGet();
-        buttonListeners.put(buttonId, Objects.requireNonNull(listener));
+        int buttonId = ++buttonCounter;
+        getButtonListenersForUpdate().put(buttonId, Objects.requireNonNull(listener));
 
-        getState().buttons.put(buttonId, buttonState);
+        getButtonsForUpdate().put(buttonId, buttonState);
 
         return this;
     }
@@ -329,7 +556,20 @@ public class IdleAlarm extends AbstractExtension {
      * @return This IdleAlarm to allow command chaining
      */
     public IdleAlarm addRedirectButton(String caption, Collection<String> styleNames, String url) {
-        return addButton(caption, styleNames, event -> Page.getCurrent().open(url, null));
+        return addRedirectButton(caption, styleNames, url, true);
+    }
+
+    /**
+     * Helper method to add redirecting button to notification. Will call addButton internally.
+     * @param caption Caption of redirect button
+     * @param styleNames Stylename applied to button
+     * @param url URL where browser window will be redirected
+     * @param prefetch false if URL must not be prefetched when warning is shown (eg. logout URL)
+     * @return This IdleAlarm to allow command chaining
+     * @see #setRedirectPrefetch(boolean)
+     */
+    public IdleAlarm addRedirectButton(String caption, Collection<String> styleNames, String url, boolean prefetch) {
+        return addButton(caption, styleNames, IdleClickListeners.redirect(url), prefetch ? url : null);
     }
 
     /**
@@ -348,7 +588,7 @@ public class IdleAlarm extends AbstractExtension {
      * @return This IdleAlarm to allow command chaining
      */
     public IdleAlarm addRefreshButton(String caption, Collection<String> styleNames) {
-        return addButton(caption, styleNames, event -> Page.getCurrent().reload());
+        return addButton(caption, styleNames, IdleClickListeners.REFRESH);
     }
 
     /**
@@ -389,14 +629,148 @@ public class IdleAlarm extends AbstractExtension {
         return getState(false).timeoutAction;
     }
 
+    /**
+     * Extend session with lightweight keep-alive requests instead of server RPC calls. Keep-alive requests do not go
+     * through UIDL processing and do not wait for session lock, but require {@link IdleKeepAliveFilter} to be mapped
+     * to same URL pattern as Vaadin servlet. Timeout is reset only when filter confirms that session was extended,
+     * otherwise, and in browsers without fetch support, server RPC calls are used.
+     * @param enabled true to use lightweight keep-alive requests
+     * @return This IdleAlarm to allow command chaining
+     */
+    public IdleAlarm setLightweightKeepAlive(boolean enabled) {
+        getState().lightweightKeepAlive = enabled;
+        return this;
+    }
+
+    /**
+     * @see #setLightweightKeepAlive(boolean)
+     *
+     * @return true if lightweight keep-alive requests are used
+     */
+    public boolean isLightweightKeepAlive() {
+        return getState(false).lightweightKeepAlive;
+    }
+
+    /**
+     * Extend session when user interacts with page (pointer, key, scroll and focus events), also when interaction
+     * does not cause any server requests. Interaction is coalesced on client side: keep-alive is sent only when less
+     * than threshold seconds are left to timeout, and at most once per window. Active users will not see the
+     * warning, as long as threshold is larger than seconds before warning.
+     * @param enabled true to extend session on user activity
+     * @return This IdleAlarm to allow command chaining
+     */
+    public IdleAlarm setActivityKeepAlive(boolean enabled) {
+        getState().activityKeepAlive = enabled;
+        return this;
+    }
+
+    /**
+     * @see #setActivityKeepAlive(boolean)
+     *
+     * @return true if session is extended on user activity
+     */
+    public boolean isActivityKeepAlive() {
+        return getState(false).activityKeepAlive;
+    }
+
+    /**
+     * Set minimum amount of seconds between keep-alives sent because of user activity
+     * @param seconds Length of window in seconds
+     * @return This IdleAlarm to allow command chaining
+     * @see #setActivityKeepAlive(boolean)
+     */
+    public IdleAlarm setActivityKeepAliveWindow(int seconds) {
+        if(seconds < 1) {
+            throw new IllegalArgumentException("Invalid amount of seconds (" + seconds + ") given");
+        }
+        getState().activityKeepAliveWindow = seconds;
+        return this;
+    }
+
+    /**
+     * @see #setActivityKeepAliveWindow(int)
+     *
+     * @return Length of window in seconds
+     */
+    public int getActivityKeepAliveWindow() {
+        return getState(false).activityKeepAliveWindow;
+    }
+
+    /**
+     * Set amount of seconds left to timeout, after which user activity will extend the session
+     * @param seconds Seconds left to timeout
+     * @return This IdleAlarm to allow command chaining
+     * @see #setActivityKeepAlive(boolean)
+     */
+    public IdleAlarm setActivityKeepAliveThreshold(int seconds) {
+        if(seconds < 1) {
+            throw new IllegalArgumentException("Invalid amount of seconds (" + seconds + ") given");
+        }
+        getState().activityKeepAliveThreshold = seconds;
+        return this;
+    }
+
+    /**
+     * @see #setActivityKeepAliveThreshold(int)
+     *
+     * @return Seconds left to timeout
+     */
+    public int getActivityKeepAliveThreshold() {
+        return getState(false).activityKeepAliveThreshold;
+    }
+
+    /**
+     * Coordinate idle timeouts of browser tabs showing UIs of same session. Oldest tab extends the session, and
+     * activity and resets of any tab are shared with other tabs, so all tabs warn and perform timeout action at the
+     * same time. Tabs communicate with BroadcastChannel, or with localStorage if BroadcastChannel is not supported.
+     * @param enabled true to coordinate tabs of session
+     * @return This IdleAlarm to allow command chaining
+     */
+    public IdleAlarm setCrossTabSync(boolean enabled) {
+        getState().crossTabSync = enabled;
+        return this;
+    }
+
+    /**
+     * @see #setCrossTabSync(boolean)
+     *
+     * @return true if tabs of session are coordinated
+     */
+    public boolean isCrossTabSync() {
+        return getState(false).crossTabSync;
+    }
+
+    /**
+     * Keep timer of idle timeout in Web Worker. Browsers throttle timers of hidden tabs, sometimes to once a minute,
+     * so without this the timeout action of background tab can be performed long after session has expired. Timers
+     * of workers are not throttled the same way. Countdown of warning is not updated while page is hidden in either
+     * mode. Browsers not supporting workers (or pages whose Content Security Policy blocks blob: workers) fall back
+     * to regular timers.
+     * @param enabled true to use Web Worker timer
+     * @return This IdleAlarm to allow command chaining
+     */
+    public IdleAlarm setWorkerTimer(boolean enabled) {
+        getState().workerTimer = enabled;
+        return this;
+    }
+
+    /**
+     * @see #setWorkerTimer(boolean)
+     *
+     * @return true if Web Worker timer is used
+     */
+    public boolean isWorkerTimer() {
+        return getState(false).workerTimer;
+    }
+
     /**
      * Add stylename applied to timeout warning notification
      * @param styleName Stylename added
      * @return This IdleAlarm to allow command chaining
      */
     public IdleAlarm addStyleName(String styleName) {
-        if(!getState().styleNames.contains(Objects.requireNonNull(styleName))) {
-            getState().styleNames.add(styleName);
+        if(!getState(false).styleNames.contains(Objects.requireNonNull(styleName))) {
+            getStyleNamesForUpdate().add(styleName);
         }
         return this;
     }
@@ -406,7 +780,72 @@ public class IdleAlarm extends AbstractExtension {
      * @param styleName Stylename removed
      */
     public void removeStyleName(String styleName) {
-        getState().styleNames.remove(styleName);
+        if(getState(false).styleNames.contains(styleName)) {
+            getStyleNamesForUpdate().remove(styleName);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if(buttonListeners == config.getButtonListeners()) {
+            out.writeInt(-1);
+        } else {
+            writeButtonListeners(out, buttonListeners);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        buttonListeners = readButtonListeners(in);
+        if(buttonListeners == null) {
+            buttonListeners = config.getButtonListeners();
+        }
+    }
+
+    /**
+     * Write listeners by button ID. Named listeners are written by ID only.
+     * @see IdleClickListeners#named(String, IdleClickListener)
+     */
+    static void writeButtonListeners(ObjectOutput out, Map<Integer,IdleClickListener> listeners) throws IOException {
+        out.writeInt(listeners.size());
+        for(Map.Entry<Integer,IdleClickListener> entry : listeners.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+    }
+
+    static Map<Integer,IdleClickListener> readButtonListeners(ObjectInput in)
+            throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        if(size < 0) {
+            return null;
+        }
+        Map<Integer,IdleClickListener> listeners = new HashMap<>();
+        for(int i = 0; i < size; ++i) {
+            listeners.put(in.readInt(), (IdleClickListener)in.readObject());
+        }
+        return listeners;
+    }
+
+    private List<String> getStyleNamesForUpdate() {
+        if(getState(false).styleNames == config.getStyleNames()) {
+            getState().styleNames = new ArrayList<>(config.getStyleNames());
+        }
+        return getState().styleNames;
+    }
+
+    private Map<Integer,IdleAlarmState.ButtonState> getButtonsForUpdate() {
+        if(getState(false).buttons == config.getButtons()) {
+            getState().buttons = new LinkedHashMap<>(config.getButtons());
+        }
+        return getState().buttons;
+    }
+
+    private Map<Integer,IdleClickListener> getButtonListenersForUpdate() {
+        if(buttonListeners == config.getButtonListeners()) {
+            buttonListeners = new HashMap<>(config.getButtonListeners());
+        }
+        return buttonListeners;
     }
 
 }
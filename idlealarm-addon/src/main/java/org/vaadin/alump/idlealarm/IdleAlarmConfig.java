@@ -0,0 +1,648 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vaadin.shared.ui.ContentMode;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+import org.vaadin.alump.idlealarm.client.shared.TimeoutAction;
+
+/**
+ * Immutable configuration template of IdleAlarm. Same instance can be shared by IdleAlarms of all UIs, so the
+ * message, style names, buttons and button listeners are not copied per UI. IdleAlarm will only copy values
+ * modified per UI.
+ * <p>
+ * Named configurations are registered when built, and are serialized by name only. Named configuration has to be
+ * built again (eg. at application startup) before sessions using it can be deserialized.
+ */
+public final class IdleAlarmConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Map<String,IdleAlarmConfig> namedConfigs = new ConcurrentHashMap<>();
+
+    /**
+     * Configuration with default values of IdleAlarm
+     */
+    public static final IdleAlarmConfig DEFAULT = builder().build();
+
+    private final transient String name;
+    private final int secondsBefore;
+    private final String message;
+    private final ContentMode contentMode;
+    private final boolean countdown;
+    private final String redirectURL;
+    private final boolean redirectPrefetch;
+    private final boolean closeButtonEnabled;
+    private final String closeButtonCaption;
+    private final TimeoutAction timeoutAction;
+    private final boolean lightweightKeepAlive;
+    private final boolean activityKeepAlive;
+    private final int activityKeepAliveWindow;
+    private final int activityKeepAliveThreshold;
+    private final boolean crossTabSync;
+    private final boolean workerTimer;
+    private final List<String> styleNames;
+    private final Map<Integer,IdleAlarmState.ButtonState> buttons;
+    private final Map<Integer,IdleClickListener> buttonListeners;
+    // Created when first needed
+    private transient volatile IdleAlarmProfile profile;
+
+    private IdleAlarmConfig(Builder builder) {
+        name = builder.name;
+        secondsBefore = builder.secondsBefore;
+        message = builder.message;
+        contentMode = builder.contentMode;
+        countdown = builder.countdown;
+        redirectURL = builder.redirectURL;
+        redirectPrefetch = builder.redirectPrefetch;
+        closeButtonEnabled = builder.closeButtonEnabled;
+        closeButtonCaption = builder.closeButtonCaption;
+        timeoutAction = builder.timeoutAction;
+        lightweightKeepAlive = builder.lightweightKeepAlive;
+        activityKeepAlive = builder.activityKeepAlive;
+        activityKeepAliveWindow = builder.activityKeepAliveWindow;
+        activityKeepAliveThreshold = builder.activityKeepAliveThreshold;
+        crossTabSync = builder.crossTabSync;
+        workerTimer = builder.workerTimer;
+        styleNames = builder.styleNames.isEmpty() ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(builder.styleNames));
+        buttons = builder.buttons.isEmpty() ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<>(builder.buttons));
+        buttonListeners = builder.buttonListeners.isEmpty() ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(builder.buttonListeners));
+    }
+
+    /**
+     * Create builder for unnamed configuration
+     * @return New builder
+     */
+    public static Builder builder() {
+        return new Builder(null);
+    }
+
+    /**
+     * Create builder for named configuration. Named configuration is registered when built, and will replace
+     * earlier configuration with same name.
+     * @param name Name of configuration
+     * @return New builder
+     */
+    public static Builder builder(String name) {
+        return new Builder(Objects.requireNonNull(name));
+    }
+
+    /**
+     * Get named configuration
+     * @param name Name of configuration
+     * @return Configuration if found
+     */
+    public static Optional<IdleAlarmConfig> get(String name) {
+        return Optional.ofNullable(namedConfigs.get(name));
+    }
+
+    /**
+     * Get all named configurations built
+     * @return Named configurations
+     */
+    static Collection<IdleAlarmConfig> getNamedConfigs() {
+        return namedConfigs.values();
+    }
+
+    /**
+     * Get name of configuration
+     * @return Name or null if unnamed
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getSecondsBefore() {
+        return secondsBefore;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public ContentMode getContentMode() {
+        return contentMode;
+    }
+
+    public boolean isCountdown() {
+        return countdown;
+    }
+
+    public String getRedirectURL() {
+        return redirectURL;
+    }
+
+    public boolean isRedirectPrefetch() {
+        return redirectPrefetch;
+    }
+
+    public boolean isCloseButtonEnabled() {
+        return closeButtonEnabled;
+    }
+
+    public String getCloseButtonCaption() {
+        return closeButtonCaption;
+    }
+
+    public TimeoutAction getTimeoutAction() {
+        return timeoutAction;
+    }
+
+    public boolean isLightweightKeepAlive() {
+        return lightweightKeepAlive;
+    }
+
+    public boolean isActivityKeepAlive() {
+        return activityKeepAlive;
+    }
+
+    public int getActivityKeepAliveWindow() {
+        return activityKeepAliveWindow;
+    }
+
+    public int getActivityKeepAliveThreshold() {
+        return activityKeepAliveThreshold;
+    }
+
+    public boolean isCrossTabSync() {
+        return crossTabSync;
+    }
+
+    public boolean isWorkerTimer() {
+        return workerTimer;
+    }
+
+    /**
+     * Get style names of warning notification
+     * @return Unmodifiable list shared by all users of configuration
+     */
+    public List<String> getStyleNames() {
+        return styleNames;
+    }
+
+    /**
+     * Get states of application specific buttons by button ID
+     * @return Unmodifiable map shared by all users of configuration
+     */
+    Map<Integer,IdleAlarmState.ButtonState> getButtons() {
+        return buttons;
+    }
+
+    /**
+     * Get listeners of application specific buttons by button ID
+     * @return Unmodifiable map shared by all users of configuration
+     */
+    Map<Integer,IdleClickListener> getButtonListeners() {
+        return buttonListeners;
+    }
+
+    /**
+     * Get largest button ID used by this configuration
+     * @return Largest button ID, 0 if no buttons
+     */
+    int getLastButtonId() {
+        return buttons.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    /**
+     * Get profile of named configuration, served to clients as static resource
+     * @return Profile, or null if configuration is unnamed
+     */
+    IdleAlarmProfile getProfile() {
+        if(name != null && profile == null) {
+            profile = IdleAlarmProfile.create(this);
+        }
+        return profile;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return name == null ? new CompactForm(this) : new NamedReference(name);
+    }
+
+    private static class NamedReference implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+
+        private NamedReference(String name) {
+            this.name = name;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            IdleAlarmConfig config = namedConfigs.get(name);
+            if(config == null) {
+                throw new InvalidObjectException("IdleAlarmConfig '" + name + "' has not been built");
+            }
+            return config;
+        }
+    }
+
+    /**
+     * Serialized form of unnamed configuration. Only values that differ from default configuration are written, and
+     * strings read are interned. Form starts with version of format, increased when fields are added or removed.
+     */
+    private static class CompactForm implements Externalizable {
+        private static final long serialVersionUID = 1L;
+
+        private static final int FORMAT_VERSION = 1;
+
+        private static final int SECONDS_BEFORE = 1;
+        private static final int MESSAGE = 1 << 1;
+        private static final int CONTENT_MODE = 1 << 2;
+        private static final int COUNTDOWN = 1 << 3;
+        private static final int REDIRECT_URL = 1 << 4;
+        private static final int CLOSE_BUTTON_ENABLED = 1 << 5;
+        private static final int CLOSE_BUTTON_CAPTION = 1 << 6;
+        private static final int TIMEOUT_ACTION = 1 << 7;
+        private static final int LIGHTWEIGHT_KEEP_ALIVE = 1 << 8;
+        private static final int ACTIVITY_KEEP_ALIVE = 1 << 9;
+        private static final int ACTIVITY_KEEP_ALIVE_WINDOW = 1 << 10;
+        private static final int ACTIVITY_KEEP_ALIVE_THRESHOLD = 1 << 11;
+        private static final int CROSS_TAB_SYNC = 1 << 12;
+        private static final int STYLE_NAMES = 1 << 13;
+        private static final int BUTTONS = 1 << 14;
+        private static final int WORKER_TIMER = 1 << 15;
+        private static final int REDIRECT_PREFETCH = 1 << 16;
+
+        private IdleAlarmConfig config;
+
+        public CompactForm() {
+        }
+
+        private CompactForm(IdleAlarmConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            int mask = 0;
+            mask |= config.secondsBefore != DEFAULT.secondsBefore ? SECONDS_BEFORE : 0;
+            mask |= !Objects.equals(config.message, DEFAULT.message) ? MESSAGE : 0;
+            mask |= config.contentMode != DEFAULT.contentMode ? CONTENT_MODE : 0;
+            mask |= config.countdown != DEFAULT.countdown ? COUNTDOWN : 0;
+            mask |= !Objects.equals(config.redirectURL, DEFAULT.redirectURL) ? REDIRECT_URL : 0;
+            mask |= config.redirectPrefetch != DEFAULT.redirectPrefetch ? REDIRECT_PREFETCH : 0;
+            mask |= config.closeButtonEnabled != DEFAULT.closeButtonEnabled ? CLOSE_BUTTON_ENABLED : 0;
+            mask |= !Objects.equals(config.closeButtonCaption, DEFAULT.closeButtonCaption) ? CLOSE_BUTTON_CAPTION : 0;
+            mask |= config.timeoutAction != DEFAULT.timeoutAction ? TIMEOUT_ACTION : 0;
+            mask |= config.lightweightKeepAlive != DEFAULT.lightweightKeepAlive ? LIGHTWEIGHT_KEEP_ALIVE : 0;
+            mask |= config.activityKeepAlive != DEFAULT.activityKeepAlive ? ACTIVITY_KEEP_ALIVE : 0;
+            mask |= config.activityKeepAliveWindow != DEFAULT.activityKeepAliveWindow
+                    ? ACTIVITY_KEEP_ALIVE_WINDOW : 0;
+            mask |= config.activityKeepAliveThreshold != DEFAULT.activityKeepAliveThreshold
+                    ? ACTIVITY_KEEP_ALIVE_THRESHOLD : 0;
+            mask |= config.crossTabSync != DEFAULT.crossTabSync ? CROSS_TAB_SYNC : 0;
+            mask |= config.workerTimer != DEFAULT.workerTimer ? WORKER_TIMER : 0;
+            mask |= !config.styleNames.isEmpty() ? STYLE_NAMES : 0;
+            mask |= !config.buttons.isEmpty() ? BUTTONS : 0;
+
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(mask);
+            if(CompactIdleAlarmState.isSet(mask, SECONDS_BEFORE)) {
+                out.writeInt(config.secondsBefore);
+            }
+            if(CompactIdleAlarmState.isSet(mask, MESSAGE)) {
+                out.writeObject(config.message);
+            }
+            if(CompactIdleAlarmState.isSet(mask, CONTENT_MODE)) {
+                CompactIdleAlarmState.writeEnum(out, config.contentMode);
+            }
+            if(CompactIdleAlarmState.isSet(mask, REDIRECT_URL)) {
+                out.writeObject(config.redirectURL);
+            }
+            if(CompactIdleAlarmState.isSet(mask, CLOSE_BUTTON_CAPTION)) {
+                out.writeObject(config.closeButtonCaption);
+            }
+            if(CompactIdleAlarmState.isSet(mask, TIMEOUT_ACTION)) {
+                CompactIdleAlarmState.writeEnum(out, config.timeoutAction);
+            }
+            if(CompactIdleAlarmState.isSet(mask, ACTIVITY_KEEP_ALIVE_WINDOW)) {
+                out.writeInt(config.activityKeepAliveWindow);
+            }
+            if(CompactIdleAlarmState.isSet(mask, ACTIVITY_KEEP_ALIVE_THRESHOLD)) {
+                out.writeInt(config.activityKeepAliveThreshold);
+            }
+            if(CompactIdleAlarmState.isSet(mask, STYLE_NAMES)) {
+                CompactIdleAlarmState.writeStrings(out, config.styleNames);
+            }
+            if(CompactIdleAlarmState.isSet(mask, BUTTONS)) {
+                CompactIdleAlarmState.writeButtons(out, config.buttons);
+                IdleAlarm.writeButtonListeners(out, config.buttonListeners);
+            }
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+            CompactIdleAlarmState.readVersion(in, FORMAT_VERSION, IdleAlarmConfig.class);
+            int mask = in.readInt();
+            if(mask == 0) {
+                config = DEFAULT;
+                return;
+            }
+
+            Builder builder = builder();
+            if(CompactIdleAlarmState.isSet(mask, SECONDS_BEFORE)) {
+                builder.secondsBefore = in.readInt();
+            }
+            if(CompactIdleAlarmState.isSet(mask, MESSAGE)) {
+                builder.message = CompactIdleAlarmState.readString(in);
+            }
+            if(CompactIdleAlarmState.isSet(mask, CONTENT_MODE)) {
+                builder.contentMode = CompactIdleAlarmState.readEnum(in, ContentMode.values());
+            }
+            builder.countdown ^= CompactIdleAlarmState.isSet(mask, COUNTDOWN);
+            if(CompactIdleAlarmState.isSet(mask, REDIRECT_URL)) {
+                builder.redirectURL = CompactIdleAlarmState.readString(in);
+            }
+            builder.redirectPrefetch ^= CompactIdleAlarmState.isSet(mask, REDIRECT_PREFETCH);
+            builder.closeButtonEnabled ^= CompactIdleAlarmState.isSet(mask, CLOSE_BUTTON_ENABLED);
+            if(CompactIdleAlarmState.isSet(mask, CLOSE_BUTTON_CAPTION)) {
+                builder.closeButtonCaption = CompactIdleAlarmState.readString(in);
+            }
+            if(CompactIdleAlarmState.isSet(mask, TIMEOUT_ACTION)) {
+                builder.timeoutAction = CompactIdleAlarmState.readEnum(in, TimeoutAction.values());
+            }
+            builder.lightweightKeepAlive ^= CompactIdleAlarmState.isSet(mask, LIGHTWEIGHT_KEEP_ALIVE);
+            builder.activityKeepAlive ^= CompactIdleAlarmState.isSet(mask, ACTIVITY_KEEP_ALIVE);
+            if(CompactIdleAlarmState.isSet(mask, ACTIVITY_KEEP_ALIVE_WINDOW)) {
+                builder.activityKeepAliveWindow = in.readInt();
+            }
+            if(CompactIdleAlarmState.isSet(mask, ACTIVITY_KEEP_ALIVE_THRESHOLD)) {
+                builder.activityKeepAliveThreshold = in.readInt();
+            }
+            builder.crossTabSync ^= CompactIdleAlarmState.isSet(mask, CROSS_TAB_SYNC);
+            builder.workerTimer ^= CompactIdleAlarmState.isSet(mask, WORKER_TIMER);
+            if(CompactIdleAlarmState.isSet(mask, STYLE_NAMES)) {
+                builder.styleNames.addAll(CompactIdleAlarmState.readStrings(in));
+            }
+            if(CompactIdleAlarmState.isSet(mask, BUTTONS)) {
+                builder.buttons.putAll(CompactIdleAlarmState.readButtons(in));
+                builder.buttonListeners.putAll(IdleAlarm.readButtonListeners(in));
+            }
+            config = new IdleAlarmConfig(builder);
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return config;
+        }
+    }
+
+    /**
+     * Builder of IdleAlarmConfig
+     */
+    public static class Builder {
+        private final String name;
+        private int secondsBefore = new IdleAlarmState().secondsBefore;
+        private String message = IdleAlarm.DEFAULT_FORMATTING;
+        private ContentMode contentMode = ContentMode.TEXT;
+        private boolean countdown = false;
+        private String redirectURL = null;
+        private boolean redirectPrefetch = true;
+        private boolean closeButtonEnabled = false;
+        private String closeButtonCaption = null;
+        private TimeoutAction timeoutAction = TimeoutAction.DEFAULT;
+        private boolean lightweightKeepAlive = false;
+        private boolean activityKeepAlive = false;
+        private int activityKeepAliveWindow = new IdleAlarmState().activityKeepAliveWindow;
+        private int activityKeepAliveThreshold = new IdleAlarmState().activityKeepAliveThreshold;
+        private boolean crossTabSync = false;
+        private boolean workerTimer = false;
+        private final List<String> styleNames = new ArrayList<>();
+        private final Map<Integer,IdleAlarmState.ButtonState> buttons = new LinkedHashMap<>();
+        private final Map<Integer,IdleClickListener> buttonListeners = new HashMap<>();
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @see IdleAlarm#setSecondsBefore(int)
+         */
+        public Builder setSecondsBefore(int seconds) {
+            if(seconds < 1) {
+                throw new IllegalArgumentException("Invalid amount of seconds (" + seconds + ") given");
+            }
+            secondsBefore = seconds;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setMessage(String)
+         */
+        public Builder setMessage(String message) {
+            if(message == null) {
+                throw new IllegalArgumentException("Message can not be null");
+            }
+            this.message = message;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setContentMode(ContentMode)
+         */
+        public Builder setContentMode(ContentMode contentMode) {
+            this.contentMode = Objects.requireNonNull(contentMode);
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setCountdown(boolean)
+         */
+        public Builder setCountdown(boolean enabled) {
+            countdown = enabled;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setRedirectURL(String)
+         */
+        public Builder setRedirectURL(String url) {
+            redirectURL = Objects.requireNonNull(url);
+            timeoutAction = TimeoutAction.REDIRECT;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setRedirectPrefetch(boolean)
+         */
+        public Builder setRedirectPrefetch(boolean enabled) {
+            redirectPrefetch = enabled;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setCloseButtonEnabled(boolean)
+         */
+        public Builder setCloseButtonEnabled(boolean closeButtonEnabled) {
+            this.closeButtonEnabled = closeButtonEnabled;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setCloseButtonCaption(String)
+         */
+        public Builder setCloseButtonCaption(String caption) {
+            closeButtonCaption = caption;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setTimeoutAction(TimeoutAction)
+         */
+        public Builder setTimeoutAction(TimeoutAction action) {
+            timeoutAction = Objects.requireNonNull(action);
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setLightweightKeepAlive(boolean)
+         */
+        public Builder setLightweightKeepAlive(boolean enabled) {
+            lightweightKeepAlive = enabled;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setActivityKeepAlive(boolean)
+         */
+        public Builder setActivityKeepAlive(boolean enabled) {
+            activityKeepAlive = enabled;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setActivityKeepAliveWindow(int)
+         */
+        public Builder setActivityKeepAliveWindow(int seconds) {
+            if(seconds < 1) {
+                throw new IllegalArgumentException("Invalid amount of seconds (" + seconds + ") given");
+            }
+            activityKeepAliveWindow = seconds;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setActivityKeepAliveThreshold(int)
+         */
+        public Builder setActivityKeepAliveThreshold(int seconds) {
+            if(seconds < 1) {
+                throw new IllegalArgumentException("Invalid amount of seconds (" + seconds + ") given");
+            }
+            activityKeepAliveThreshold = seconds;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setCrossTabSync(boolean)
+         */
+        public Builder setCrossTabSync(boolean enabled) {
+            crossTabSync = enabled;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#setWorkerTimer(boolean)
+         */
+        public Builder setWorkerTimer(boolean enabled) {
+            workerTimer = enabled;
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#addStyleName(String)
+         */
+        public Builder addStyleName(String styleName) {
+            if(!styleNames.contains(Objects.requireNonNull(styleName))) {
+                styleNames.add(styleName);
+            }
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#addButton(String, Collection, IdleClickListener)
+         */
+        public Builder addButton(String caption, Collection<String> styleNames, IdleClickListener listener) {
+            return addButton(caption, styleNames, listener, null);
+        }
+
+        private Builder addButton(String caption, Collection<String> styleNames, IdleClickListener listener,
+                String prefetchURL) {
+            IdleAlarmState.ButtonState buttonState = new IdleAlarmState.ButtonState();
+            buttonState.caption = caption;
+            buttonState.styleNames = styleNames == null ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(styleNames));
+            buttonState.prefetchURL = prefetchURL;
+
+            int buttonId = buttons.size() + 1;
+            buttonListeners.put(buttonId, Objects.requireNonNull(listener));
+            buttons.put(buttonId, buttonState);
+            return this;
+        }
+
+        /**
+         * @see IdleAlarm#addButton(String, IdleClickListener)
+         */
+        public Builder addButton(String caption, IdleClickListener listener) {
+            return addButton(caption, null, listener);
+        }
+
+        /**
+         * @see IdleAlarm#addRedirectButton(String, String)
+         */
+        public Builder addRedirectButton(String caption, String url) {
+            return addRedirectButton(caption, Arrays.asList("redirect"), url);
+        }
+
+        /**
+         * @see IdleAlarm#addRedirectButton(String, Collection, String)
+         */
+        public Builder addRedirectButton(String caption, Collection<String> styleNames, String url) {
+            return addRedirectButton(caption, styleNames, url, true);
+        }
+
+        /**
+         * @see IdleAlarm#addRedirectButton(String, Collection, String, boolean)
+         */
+        public Builder addRedirectButton(String caption, Collection<String> styleNames, String url,
+                boolean prefetch) {
+            return addButton(caption, styleNames, IdleClickListeners.redirect(url), prefetch ? url : null);
+        }
+
+        /**
+         * @see IdleAlarm#addRefreshButton(String)
+         */
+        public Builder addRefreshButton(String caption) {
+            return addRefreshButton(caption, Arrays.asList("refresh"));
+        }
+
+        /**
+         * @see IdleAlarm#addRefreshButton(String, Collection)
+         */
+        public Builder addRefreshButton(String caption, Collection<String> styleNames) {
+            return addButton(caption, styleNames, IdleClickListeners.REFRESH);
+        }
+
+        /**
+         * Build immutable configuration. Named configurations are registered.
+         * @return New configuration
+         */
+        public IdleAlarmConfig build() {
+            IdleAlarmConfig config = new IdleAlarmConfig(this);
+            if(name != null) {
+                namedConfigs.put(name, config);
+            }
+            return config;
+        }
+    }
+}
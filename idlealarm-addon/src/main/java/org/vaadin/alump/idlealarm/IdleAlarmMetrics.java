@@ -0,0 +1,258 @@
+package org.vaadin.alump.idlealarm;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.vaadin.server.VaadinService;
+import org.vaadin.alump.idlealarm.client.shared.TimeoutAction;
+
+/**
+ * Metrics of IdleAlarm instances of one VaadinService, registered to platform MBean server as
+ * {@code org.vaadin.alump.idlealarm:type=IdleAlarmMetrics,name=<service name>}. Counters are LongAdder based, so
+ * recording does not add contention between request threads.
+ */
+public class IdleAlarmMetrics implements IdleAlarmMetricsMXBean {
+
+    private final static Logger LOGGER = Logger.getLogger(IdleAlarmMetrics.class.getName());
+
+    public static final String DOMAIN = "org.vaadin.alump.idlealarm";
+
+    private static final Map<VaadinService,IdleAlarmMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Counter with rate, rate is exponentially weighted moving average of one minute updated every five seconds.
+     * Rate is updated lazily by the thread that notices tick has passed.
+     */
+    static class Meter {
+        private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+        private static final double ALPHA = 1.0 - Math.exp(-5.0 / 60.0);
+        // After this many idle ticks the rate is zero in double precision anyway
+        private static final long MAX_TICKS = 10000L;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder uncounted = new LongAdder();
+        private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+        private volatile double rate = 0.0;
+
+        void mark() {
+            tickIfNecessary();
+            count.increment();
+            uncounted.increment();
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        double getRate() {
+            tickIfNecessary();
+            return rate;
+        }
+
+        private void tickIfNecessary() {
+            long previous = lastTick.get();
+            long age = System.nanoTime() - previous;
+            if(age > TICK_NANOS && lastTick.compareAndSet(previous, previous + age - age % TICK_NANOS)) {
+                long ticks = Math.min(age / TICK_NANOS, MAX_TICKS);
+                double instantRate = uncounted.sumThenReset() / (double)TimeUnit.NANOSECONDS.toSeconds(TICK_NANOS);
+                double updated = rate + ALPHA * (instantRate - rate);
+                for(long i = 1; i < ticks; ++i) {
+                    updated -= ALPHA * updated;
+                }
+                rate = updated;
+            }
+        }
+    }
+
+    private final Meter warnings = new Meter();
+    private final Meter keepAlives = new Meter();
+    private final Meter buttonClicks = new Meter();
+    private final Map<TimeoutAction,LongAdder> timeoutActions = new EnumMap<>(TimeoutAction.class);
+    private final LongAdder activeAlarms = new LongAdder();
+    private final IdleLatencyHistogram rpcLatency = new IdleLatencyHistogram();
+    private ObjectName objectName;
+
+    protected IdleAlarmMetrics() {
+        for(TimeoutAction action : TimeoutAction.values()) {
+            timeoutActions.put(action, new LongAdder());
+        }
+    }
+
+    /**
+     * Get metrics of given service. Metrics are created and registered to platform MBean server when needed, and
+     * unregistered when service is destroyed.
+     * @param service Service of metrics
+     * @return Metrics of service
+     */
+    public static IdleAlarmMetrics get(VaadinService service) {
+        if(service == null) {
+            throw new IllegalArgumentException("Service can not be null");
+        }
+        return metrics.computeIfAbsent(service, s -> {
+            IdleAlarmMetrics created = new IdleAlarmMetrics();
+            created.register(s);
+            s.addServiceDestroyListener(event -> uninstall(s));
+            return created;
+        });
+    }
+
+    /**
+     * Unregister metrics of given service. Called automatically when service is destroyed.
+     * @param service Service of metrics
+     */
+    public static void uninstall(VaadinService service) {
+        IdleAlarmMetrics removed = metrics.remove(service);
+        if(removed != null) {
+            removed.unregister();
+        }
+    }
+
+    /**
+     * Get name used to register this instance
+     * @return Name, or null if registration failed
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    void warningShown() {
+        warnings.mark();
+    }
+
+    void keepAlive() {
+        keepAlives.mark();
+    }
+
+    void buttonClicked() {
+        buttonClicks.mark();
+    }
+
+    void timeoutAction(TimeoutAction action) {
+        timeoutActions.get(action).increment();
+    }
+
+    void alarmAttached() {
+        activeAlarms.increment();
+    }
+
+    void alarmDetached() {
+        activeAlarms.decrement();
+    }
+
+    void recordRpc(long nanos) {
+        rpcLatency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    @Override
+    public long getWarningsShown() {
+        return warnings.getCount();
+    }
+
+    @Override
+    public double getWarningRate() {
+        return warnings.getRate();
+    }
+
+    @Override
+    public long getKeepAlives() {
+        return keepAlives.getCount();
+    }
+
+    @Override
+    public double getKeepAliveRate() {
+        return keepAlives.getRate();
+    }
+
+    @Override
+    public long getButtonClicks() {
+        return buttonClicks.getCount();
+    }
+
+    @Override
+    public double getButtonClickRate() {
+        return buttonClicks.getRate();
+    }
+
+    @Override
+    public Map<String,Long> getTimeoutActions() {
+        Map<String,Long> values = new LinkedHashMap<>();
+        timeoutActions.forEach((action, counter) -> values.put(action.name(), counter.sum()));
+        return values;
+    }
+
+    @Override
+    public long getActiveAlarms() {
+        return activeAlarms.sum();
+    }
+
+    @Override
+    public long getRpcCount() {
+        return rpcLatency.getCount();
+    }
+
+    @Override
+    public double getRpcLatencyMeanMicros() {
+        return rpcLatency.getMean();
+    }
+
+    @Override
+    public long getRpcLatencyMedianMicros() {
+        return rpcLatency.getPercentile(50.0);
+    }
+
+    @Override
+    public long getRpcLatency99thPercentileMicros() {
+        return rpcLatency.getPercentile(99.0);
+    }
+
+    @Override
+    public long getRpcLatencyMaxMicros() {
+        return rpcLatency.getMax();
+    }
+
+    @Override
+    public void resetLatency() {
+        rpcLatency.reset();
+    }
+
+    private void register(VaadinService service) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String name = DOMAIN + ":type=IdleAlarmMetrics,name="
+                + ObjectName.quote(String.valueOf(service.getServiceName()));
+        try {
+            try {
+                objectName = server.registerMBean(this, new ObjectName(name)).getObjectName();
+            } catch(InstanceAlreadyExistsException e) {
+                // Multiple services with same name, identity is added to tell those apart
+                objectName = server.registerMBean(this, new ObjectName(name + ",id="
+                        + Integer.toHexString(System.identityHashCode(service)))).getObjectName();
+            }
+        } catch(JMException | SecurityException e) {
+            LOGGER.log(Level.WARNING, "Failed to register IdleAlarm metrics of " + service.getServiceName(), e);
+        }
+    }
+
+    private void unregister() {
+        if(objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch(JMException e) {
+                LOGGER.log(Level.FINE, "Failed to unregister IdleAlarm metrics", e);
+            }
+            objectName = null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.vaadin.alump.idlealarm;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link IdleAlarmMetrics}. Rates are events per second, as exponentially weighted moving
+ * average of one minute. Latencies are given in microseconds.
+ */
+public interface IdleAlarmMetricsMXBean {
+
+    /**
+     * Warnings shown by clients. Warnings are reported with next request of client. When session expired after
+     * warning, it's reported by the next page loaded in the same browser tab.
+     */
+    long getWarningsShown();
+
+    double getWarningRate();
+
+    /**
+     * Keep-alive calls received with resetIdleTimeout RPC
+     */
+    long getKeepAlives();
+
+    double getKeepAliveRate();
+
+    long getButtonClicks();
+
+    double getButtonClickRate();
+
+    /**
+     * Timeout actions performed by clients, by name of action. Reported by the next page loaded in the same browser
+     * tab, so actions are not counted when user does not return to application in that tab. Default action performs
+     * nothing, and is not counted.
+     */
+    Map<String,Long> getTimeoutActions();
+
+    /**
+     * Amount of IdleAlarm instances currently attached
+     */
+    long getActiveAlarms();
+
+    /**
+     * Amount of idle RPC calls handled
+     */
+    long getRpcCount();
+
+    double getRpcLatencyMeanMicros();
+
+    long getRpcLatencyMedianMicros();
+
+    long getRpcLatency99thPercentileMicros();
+
+    long getRpcLatencyMaxMicros();
+
+    /**
+     * Reset latency histogram. Counters are not reset.
+     */
+    void resetLatency();
+}
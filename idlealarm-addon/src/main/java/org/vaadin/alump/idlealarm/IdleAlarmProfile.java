@@ -0,0 +1,156 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.http.HttpServletResponse;
+
+import com.vaadin.server.EncodeResult;
+import com.vaadin.server.JsonCodec;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.ui.ConnectorTracker;
+import elemental.json.JsonObject;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+
+/**
+ * Values of named configuration served to clients as static resource. Profile is encoded once, and served with long
+ * cache time, so initial state of each IdleAlarm only contains the key of profile and values that differ from it.
+ * Profiles are identified by hash of their content, so modified configuration gets new URL.
+ */
+class IdleAlarmProfile {
+
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private static final Map<String,IdleAlarmProfile> profiles = new ConcurrentHashMap<>();
+
+    /**
+     * Encoded state with default values
+     */
+    static final JsonObject DEFAULT_STATE = (JsonObject)JsonCodec.encode(new IdleAlarmState(), null,
+            IdleAlarmState.class, null).getEncodedValue();
+
+    private final String key;
+    private final byte[] content;
+    // Encoded state of profile, used as reference when state of IdleAlarm is encoded
+    private final JsonObject state;
+    private final Set<String> names;
+
+    private IdleAlarmProfile(IdleAlarmConfig config) {
+        CompactIdleAlarmState profileState = new CompactIdleAlarmState();
+        profileState.applyConfig(config);
+
+        EncodeResult result = JsonCodec.encode(profileState, DEFAULT_STATE, IdleAlarmState.class, null);
+        JsonObject diff = (JsonObject)result.getDiff();
+
+        state = (JsonObject)result.getEncodedValue();
+        names = new HashSet<>(Arrays.asList(diff.keys()));
+        content = diff.toJson().getBytes(StandardCharsets.UTF_8);
+        key = hash(content);
+    }
+
+    /**
+     * Create profile of given named configuration
+     * @param config Named configuration
+     * @return Profile, registered so that it can be served to clients
+     */
+    static IdleAlarmProfile create(IdleAlarmConfig config) {
+        IdleAlarmProfile profile = new IdleAlarmProfile(config);
+        return profiles.computeIfAbsent(profile.key, key -> profile);
+    }
+
+    /**
+     * Get key of profile used in URL of profile
+     * @return Hash of content
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Get encoded state of profile
+     * @return Encoded state, not modified by caller
+     */
+    JsonObject getState() {
+        return state;
+    }
+
+    /**
+     * Resolve names of values in given state that differ from profile, and are also defined by profile
+     * @param state State of IdleAlarm
+     * @param connectorTracker Connector tracker of UI
+     * @return Names of values, null if none
+     */
+    List<String> resolveOverrides(IdleAlarmState state, ConnectorTracker connectorTracker) {
+        JsonObject diff = (JsonObject)JsonCodec.encode(state, this.state, IdleAlarmState.class, connectorTracker)
+                .getDiff();
+        List<String> overrides = null;
+        for(String name : diff.keys()) {
+            if(names.contains(name)) {
+                if(overrides == null) {
+                    overrides = new ArrayList<>();
+                }
+                overrides.add(name);
+            }
+        }
+        return overrides;
+    }
+
+    /**
+     * Write profile with given key to response
+     * @param key Key of profile
+     * @param request Request of profile
+     * @param response Response written
+     * @throws IOException If writing fails
+     */
+    static void write(String key, VaadinRequest request, VaadinResponse response) throws IOException {
+        IdleAlarmProfile profile = find(key);
+        if(profile == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown IdleAlarm profile");
+            return;
+        }
+
+        String etag = "\"" + profile.key + "\"";
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", CACHE_CONTROL);
+        if(etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType("application/json; charset=UTF-8");
+        response.setContentLength(profile.content.length);
+        response.getOutputStream().write(profile.content);
+    }
+
+    private static IdleAlarmProfile find(String key) {
+        IdleAlarmProfile profile = profiles.get(key);
+        if(profile == null) {
+            // Profiles are created lazily, eg. other node of cluster may have rendered the page
+            IdleAlarmConfig.getNamedConfigs().forEach(IdleAlarmConfig::getProfile);
+            profile = profiles.get(key);
+        }
+        return profile;
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder builder = new StringBuilder();
+            for(int i = 0; i < 12; ++i) {
+                builder.append(String.format("%02x", digest[i]));
+            }
+            return builder.toString();
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.vaadin.alump.idlealarm;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.vaadin.server.ConnectorResource;
+import com.vaadin.server.ServiceInitEvent;
+import com.vaadin.server.VaadinServiceInitListener;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.shared.ApplicationConstants;
+import com.vaadin.shared.ui.ui.UIConstants;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+
+/**
+ * Registered automatically with ServiceLoader. Registers {@link IdleAlarmMetrics} of service, and adds request handler
+ * that tells {@link IdleSessionController} about UIDL requests of UIs. Controller then sends server's last access and
+ * current time to clients, so clients can track the real deadline of session. When {@link IdleUIPassivator} is
+ * installed, passivated UIs are restored here before Vaadin looks for them. Profiles of named configurations are
+ * served here too.
+ */
+public class IdleAlarmServiceInitListener implements VaadinServiceInitListener {
+
+    private static final String UI_PATH_PREFIX = "/" + ApplicationConstants.APP_PATH + "/";
+
+    private static final String PROFILE_PATH_PREFIX = UI_PATH_PREFIX + IdleAlarmState.PROFILE_PATH + "/";
+
+    private static final String UIDL_PATH_PREFIX = "/" + ApplicationConstants.UIDL_PATH + "/";
+
+    private static final String HEARTBEAT_PATH_PREFIX = "/" + ApplicationConstants.HEARTBEAT_PATH + "/";
+
+    // APP/UPLOAD/[uiid]/... and APP/connector/[uiid]/...
+    private static final Pattern UI_PATH_PATTERN = Pattern.compile("^" + UI_PATH_PREFIX + "(?:UPLOAD|"
+            + ConnectorResource.CONNECTOR_PATH + ")/(\\d+)/.*");
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        // Registered already here, so metrics are available before first IdleAlarm is created
+        IdleAlarmMetrics.get(event.getSource());
+
+        // Handlers added here are called before UIDL handler, and without session lock
+        event.addRequestHandler((session, request, response) -> {
+            if(session == null) {
+                return false;
+            }
+
+            String pathInfo = request.getPathInfo();
+            if(pathInfo == null) {
+                return false;
+            }
+
+            if(pathInfo.startsWith(PROFILE_PATH_PREFIX)) {
+                IdleAlarmProfile.write(pathInfo.substring(PROFILE_PATH_PREFIX.length()), request, response);
+                return true;
+            } else if(pathInfo.startsWith(UIDL_PATH_PREFIX)) {
+                int uiId = parseUIId(request.getParameter(UIConstants.UI_ID_PARAMETER));
+                if(uiId >= 0) {
+                    restoreIfPassivated(session, uiId);
+                    requestReceived(session, uiId);
+                }
+            } else if(pathInfo.startsWith(HEARTBEAT_PATH_PREFIX)) {
+                int uiId = parseUIId(request.getParameter(UIConstants.UI_ID_PARAMETER));
+                if(uiId >= 0 && heartbeatOfPassivated(session, uiId)) {
+                    // Answered like HeartbeatHandler does, without restoring UI
+                    response.setHeader("Cache-Control", "no-cache");
+                    response.setHeader("Content-Type", "text/plain");
+                    return true;
+                }
+            } else if(pathInfo.startsWith(UI_PATH_PREFIX)) {
+                Matcher matcher = UI_PATH_PATTERN.matcher(pathInfo);
+                if(matcher.matches()) {
+                    restoreIfPassivated(session, parseUIId(matcher.group(1)));
+                }
+            }
+            return false;
+        });
+    }
+
+    private static int parseUIId(String uiId) {
+        if(uiId == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(uiId);
+        } catch(NumberFormatException e) {
+            // Invalid requests are handled by Vaadin
+            return -1;
+        }
+    }
+
+    private static void restoreIfPassivated(VaadinSession session, int uiId) {
+        IdleUIPassivator.get(session.getService()).ifPresent(passivator -> passivator.requestReceived(session, uiId));
+    }
+
+    private static boolean heartbeatOfPassivated(VaadinSession session, int uiId) {
+        return IdleUIPassivator.get(session.getService())
+                .map(passivator -> passivator.heartbeatReceived(session, uiId)).orElse(false);
+    }
+
+    private static void requestReceived(VaadinSession session, int id) {
+        long now = System.currentTimeMillis();
+        // Run right away if session is not locked, otherwise when lock is released
+        session.access(() -> {
+            IdleSessionController controller = IdleSessionController.find(session);
+            if(controller != null) {
+                controller.requestReceived(id, now);
+            }
+        });
+    }
+}
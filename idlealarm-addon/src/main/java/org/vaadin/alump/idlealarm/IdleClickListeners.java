@@ -0,0 +1,99 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vaadin.server.Page;
+
+/**
+ * Listeners of warning buttons referenced by stable IDs. Named listeners are registered, and are serialized by ID
+ * only, so closures are not written with every session. Named listener has to be registered again (eg. at application
+ * startup) before sessions using it can be deserialized.
+ */
+public final class IdleClickListeners {
+
+    private static final Map<String,IdleClickListener> namedListeners = new ConcurrentHashMap<>();
+
+    /**
+     * Listener used by refresh buttons
+     */
+    static final IdleClickListener REFRESH = named("org.vaadin.alump.idlealarm.refresh",
+            event -> Page.getCurrent().reload());
+
+    private IdleClickListeners() {
+    }
+
+    /**
+     * Register listener with given ID. Will replace earlier listener with same ID.
+     * @param id Stable ID of listener, same in all nodes of cluster
+     * @param listener Listener called when button is clicked
+     * @return Named listener that is serialized by ID
+     */
+    public static IdleClickListener named(String id, IdleClickListener listener) {
+        NamedListener named = new NamedListener(Objects.requireNonNull(id), Objects.requireNonNull(listener));
+        namedListeners.put(id, named);
+        return named;
+    }
+
+    /**
+     * Get named listener
+     * @param id ID of listener
+     * @return Listener if registered
+     */
+    public static Optional<IdleClickListener> get(String id) {
+        return Optional.ofNullable(namedListeners.get(id));
+    }
+
+    /**
+     * Listener redirecting browser to given URL. Only URL is serialized.
+     * @param url URL where browser window will be redirected
+     * @return Listener
+     */
+    static IdleClickListener redirect(String url) {
+        return new RedirectListener(Objects.requireNonNull(url));
+    }
+
+    private static class NamedListener implements IdleClickListener {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+        private final transient IdleClickListener listener;
+
+        private NamedListener(String id, IdleClickListener listener) {
+            this.id = id;
+            this.listener = listener;
+        }
+
+        @Override
+        public void buttonClick(IdleClickEvent event) {
+            listener.buttonClick(event);
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            IdleClickListener listener = namedListeners.get(id);
+            if(listener == null) {
+                throw new InvalidObjectException("IdleClickListener '" + id + "' has not been registered");
+            }
+            return listener;
+        }
+    }
+
+    private static class RedirectListener implements IdleClickListener {
+        private static final long serialVersionUID = 1L;
+
+        private final String url;
+
+        private RedirectListener(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void buttonClick(IdleClickEvent event) {
+            Page.getCurrent().open(url, null);
+        }
+    }
+}
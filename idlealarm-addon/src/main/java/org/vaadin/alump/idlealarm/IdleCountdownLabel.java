@@ -51,7 +51,26 @@ public class IdleCountdownLabel extends AbstractComponent {
     public void attach() {
         super.attach();
 
-        getState().maxInactiveInterval = IdleTimeoutServerUtil.resolveMaxInactiveInterval(getUI());
+        IdleSessionController controller = IdleSessionController.get(getUI());
+        getState().maxInactiveInterval = controller.getMaxInactiveInterval();
+        controller.register(this);
+    }
+
+    @Override
+    public void detach() {
+        IdleSessionController controller = IdleSessionController.find(getSession());
+        if(controller != null) {
+            controller.unregister(this);
+        }
+        super.detach();
+    }
+
+    /**
+     * Called by session controller when max inactive interval of session changes
+     * @param maxInactiveInterval New interval in seconds
+     */
+    void updateMaxInactiveInterval(int maxInactiveInterval) {
+        getState().maxInactiveInterval = maxInactiveInterval;
     }
 
     public void setFormatting(String formatting) {
@@ -0,0 +1,162 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.server.WrappedSession;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+
+/**
+ * Servlet filter handling lightweight keep-alive requests sent by IdleAlarm (see
+ * {@link IdleAlarm#setLightweightKeepAlive(boolean)}). Keep-alive requests are answered before Vaadin servlet, so
+ * those never go through UIDL processing and never wait for session lock. Filter has to be mapped to same URL
+ * pattern as Vaadin servlet. All other requests are passed to filter chain untouched.
+ * <p>
+ * Accessing HTTP session extends it. Last request timestamp of VaadinSession, used by Vaadin to close idle sessions,
+ * is updated when session lock is next time available.
+ * <p>
+ * Requests have to carry CSRF token of VaadinSession, and requests browser reports as cross-site are rejected, so
+ * other sites can not keep session alive. Only sessions matching the token are extended. Rejected requests are
+ * answered with 403, requests without session with 410; client then falls back to server RPC call.
+ */
+public class IdleKeepAliveFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        //ignored
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if(request instanceof HttpServletRequest && isKeepAliveRequest((HttpServletRequest)request)) {
+            handleKeepAlive((HttpServletRequest)request, (HttpServletResponse)response);
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        //ignored
+    }
+
+    protected boolean isKeepAliveRequest(HttpServletRequest request) {
+        // Query string is checked directly, to avoid parsing of request body
+        String query = request.getQueryString();
+        if(!"POST".equals(request.getMethod()) || query == null) {
+            return false;
+        }
+        for(String parameter : query.split("&")) {
+            if(parameter.equals(IdleAlarmState.KEEP_ALIVE_PARAMETER)
+                    || parameter.startsWith(IdleAlarmState.KEEP_ALIVE_PARAMETER + "=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void handleKeepAlive(HttpServletRequest request, HttpServletResponse response) {
+        if(!isSameOrigin(request)) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        // Servlet container updates last accessed time of session when it's accessed. That alone does not keep
+        // VaadinSession alive, as its last request timestamp is only updated for requests with valid token.
+        HttpSession httpSession = request.getSession(false);
+        if(httpSession == null) {
+            response.setStatus(HttpServletResponse.SC_GONE);
+            return;
+        }
+
+        String token = request.getHeader(IdleAlarmState.KEEP_ALIVE_TOKEN_HEADER);
+        boolean found = false;
+        boolean extended = false;
+        long now = System.currentTimeMillis();
+        for(VaadinSession session : VaadinSession.getAllSessions(httpSession)) {
+            if(session.getService() == null) {
+                continue;
+            }
+            found = true;
+            if(!isTokenValid(httpSession, session.getService(), token)) {
+                continue;
+            }
+            // Never waits for lock, if session is locked timestamp is updated when lock is released
+            session.access(() -> {
+                if(session.getLastRequestTimestamp() < now) {
+                    session.setLastRequestTimestamp(now);
+                }
+                IdleStageTracker.recordActivity(session);
+            });
+            IdleSessionReaper.recordActivity(session);
+            extended = true;
+        }
+
+        if(extended) {
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        } else {
+            response.setStatus(found ? HttpServletResponse.SC_FORBIDDEN : HttpServletResponse.SC_GONE);
+        }
+    }
+
+    /**
+     * Check that request was not sent by other site. Browsers not sending Sec-Fetch-Site header are checked with
+     * Origin header, if it's present.
+     * @param request Keep-alive request
+     * @return true if request was not reported as cross-origin
+     */
+    protected boolean isSameOrigin(HttpServletRequest request) {
+        String site = request.getHeader("Sec-Fetch-Site");
+        if(site != null) {
+            return site.equals("same-origin");
+        }
+
+        String origin = request.getHeader("Origin");
+        if(origin == null) {
+            return true;
+        }
+        // Host is compared as given by browser, so proxies between browser and server do not need to be known
+        int hostStart = origin.indexOf("://");
+        return hostStart > 0 && origin.substring(hostStart + 3).equalsIgnoreCase(request.getHeader("Host"));
+    }
+
+    private static boolean isTokenValid(HttpSession httpSession, VaadinService service, String token) {
+        if(!service.getDeploymentConfiguration().isXsrfProtectionEnabled()) {
+            return true;
+        }
+        Object expected = httpSession.getAttribute(getTokenAttribute(service));
+        return token != null && token.equals(expected);
+    }
+
+    private static String getTokenAttribute(VaadinService service) {
+        return IdleKeepAliveFilter.class.getName() + ".token." + service.getServiceName();
+    }
+
+    /**
+     * Make CSRF token of session available to filter. Token of VaadinSession can only be read under its lock, so it's
+     * copied to HTTP session, where filter reads it without waiting for the lock.
+     * @param session Session using lightweight keep-alive requests, must be locked
+     */
+    static void publishToken(VaadinSession session) {
+        WrappedSession wrappedSession = session.getSession();
+        if(wrappedSession == null || session.getService() == null) {
+            return;
+        }
+        String name = getTokenAttribute(session.getService());
+        if(wrappedSession.getAttribute(name) == null) {
+            wrappedSession.setAttribute(name, session.getCsrfToken());
+        }
+    }
+}
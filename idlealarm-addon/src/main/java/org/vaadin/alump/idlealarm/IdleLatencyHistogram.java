@@ -0,0 +1,108 @@
+package org.vaadin.alump.idlealarm;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies. Values are recorded to log-linear buckets (eight buckets per power of two), so
+ * percentiles are accurate to 12.5%. Recording does not allocate, and concurrent recorders only contend when they
+ * update same bucket.
+ */
+class IdleLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    // Values up to 2^40 microseconds (about 12 days), larger values are recorded to last bucket
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(bucketIndex(Long.MAX_VALUE) + 1);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+    /**
+     * Record value
+     * @param value Value recorded, negative values are recorded as zero
+     */
+    void record(long value) {
+        value = Math.max(0L, value);
+        buckets.incrementAndGet(bucketIndex(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    long getCount() {
+        long count = 0;
+        for(int i = 0; i < buckets.length(); ++i) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    double getMean() {
+        long count = getCount();
+        return count > 0 ? sum.sum() / (double)count : 0.0;
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get value at given percentile. Result is upper bound of bucket, and never more than maximum recorded value.
+     * @param percentile Percentile between 0 and 100
+     * @return Value at percentile, or zero if histogram is empty
+     */
+    long getPercentile(double percentile) {
+        long[] counts = new long[buckets.length()];
+        long count = 0;
+        for(int i = 0; i < counts.length; ++i) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        if(count == 0) {
+            return 0L;
+        }
+
+        long rank = Math.max(1L, (long)Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for(int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if(seen >= rank) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clear recorded values. Values recorded concurrently with reset may be lost or kept.
+     */
+    void reset() {
+        for(int i = 0; i < buckets.length(); ++i) {
+            buckets.set(i, 0L);
+        }
+        sum.reset();
+        max.reset();
+    }
+
+    static int bucketIndex(long value) {
+        if(value < LINEAR_LIMIT) {
+            return (int)value;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        int subBucket = exponent == MAX_EXPONENT && value >= (1L << (MAX_EXPONENT + 1)) ? SUB_BUCKETS - 1
+                : (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if(index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (1L << exponent) + ((long)(subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
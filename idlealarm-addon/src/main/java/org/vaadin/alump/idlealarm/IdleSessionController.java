@@ -0,0 +1,353 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+import com.vaadin.server.ErrorEvent;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.shared.Registration;
+import com.vaadin.shared.communication.PushMode;
+import com.vaadin.ui.UI;
+
+/**
+ * Session scoped controller of IdleAlarms. Idle timeout is property of session, so it's owned here once: max inactive
+ * interval is resolved once per session, default configuration is shared by alarms of all UIs, and requests of all
+ * UIs extend the deadline shown by every UI. IdleAlarm of each UI is a thin view of the controller.
+ * <p>
+ * When session is extended by one UI, other UIs with automatic push get the new deadline pushed. Updates are
+ * coalesced per UI, so users with many UIs do not cause a push to every UI on every request.
+ * <p>
+ * Server side can listen idle stages of session (eg. idle for 5 minutes, warning shown, expired) to release
+ * resources held for idle users. Stages are tracked by background thread, so clients do not need to make requests.
+ */
+public class IdleSessionController implements Serializable {
+
+    /**
+     * Deadline is pushed to other UIs at most this often, so clients of other UIs may show warning this much early
+     */
+    static final long OTHER_UI_SYNC_MILLIS = 10000L;
+
+    /**
+     * Deadline is sent to UI making requests at most this often. UI resets its deadline itself when it makes request,
+     * so this only corrects clock drift.
+     */
+    static final long OWN_UI_SYNC_MILLIS = 60000L;
+
+    /**
+     * Keep-alive calls of all UIs are recorded to reaper once within this period. Every UI still sends its own calls,
+     * only cross-tab sync reduces those.
+     */
+    static final long KEEP_ALIVE_COALESCE_MILLIS = 1000L;
+
+    private static class StageListener implements Serializable {
+        private final IdleStage stage;
+        private final IdleStageListener listener;
+
+        private StageListener(IdleStage stage, IdleStageListener listener) {
+            this.stage = stage;
+            this.listener = listener;
+        }
+    }
+
+    private final Map<Integer,IdleAlarm> alarms = new HashMap<>();
+    private final List<IdleCountdownLabel> labels = new ArrayList<>();
+    private final List<StageListener> stageListeners = new ArrayList<>();
+    private transient VaadinSession session;
+    private String crossTabKey;
+    private int maxInactiveInterval = -1;
+    private IdleAlarmConfig config = IdleAlarmConfig.DEFAULT;
+    private long lastKeepAlive = 0L;
+
+    protected IdleSessionController() {
+    }
+
+    /**
+     * Get controller of given session, controller is created if missing. Session has to be locked.
+     * @param session Session of controller
+     * @return Controller of session
+     */
+    public static IdleSessionController get(VaadinSession session) {
+        if(session == null) {
+            throw new IllegalArgumentException("Session can not be null");
+        }
+        IdleSessionController controller = session.getAttribute(IdleSessionController.class);
+        if(controller == null) {
+            controller = new IdleSessionController();
+            session.setAttribute(IdleSessionController.class, controller);
+        }
+        controller.session = session;
+        return controller;
+    }
+
+    /**
+     * Get controller of session of given UI
+     * @param ui UI of session
+     * @return Controller of session
+     * @throws IllegalArgumentException If UI is null
+     * @throws IllegalStateException If UI is not attached to session
+     */
+    public static IdleSessionController get(UI ui) throws IllegalArgumentException, IllegalStateException {
+        if(ui == null) {
+            throw new IllegalArgumentException("UI can not be null");
+        }
+        if(ui.getSession() == null) {
+            throw new IllegalStateException("UI is not attached to session");
+        }
+        return get(ui.getSession());
+    }
+
+    /**
+     * Get controller of given session, if it has been created. Session has to be locked.
+     * @param session Session of controller
+     * @return Controller of session or null if not created
+     */
+    static IdleSessionController find(VaadinSession session) {
+        IdleSessionController controller = session == null ? null
+                : session.getAttribute(IdleSessionController.class);
+        if(controller != null) {
+            controller.session = session;
+        }
+        return controller;
+    }
+
+    /**
+     * Get session of controller
+     * @return Session
+     */
+    public VaadinSession getSession() {
+        return session;
+    }
+
+    /**
+     * Get max inactive interval of session. Value is resolved once per session, and changes made directly to
+     * session are noticed when UIs of session make requests.
+     * @return Interval in seconds
+     * @throws IllegalStateException If session does not have valid max inactive interval defined
+     */
+    public int getMaxInactiveInterval() throws IllegalStateException {
+        if(maxInactiveInterval < 1) {
+            maxInactiveInterval = IdleTimeoutServerUtil.resolveMaxInactiveInterval(session);
+        }
+        return maxInactiveInterval;
+    }
+
+    /**
+     * Change max inactive interval of session. New interval is sent to clients of all UIs, which re-arm their
+     * timers without reload. Time of last access is kept, so deadline moves by the difference. UIs with automatic
+     * push get the new interval right away, others with their next response. Shortened interval may therefore
+     * expire session of idle client without push before its warning is shown.
+     * @param seconds Interval in seconds
+     * @return This controller to allow command chaining
+     * @throws IllegalArgumentException If given value is smaller than 1 seconds
+     */
+    public IdleSessionController setMaxInactiveInterval(int seconds) throws IllegalArgumentException {
+        if(seconds < 1) {
+            throw new IllegalArgumentException("Invalid amount of seconds (" + seconds + ") given");
+        }
+        session.getSession().setMaxInactiveInterval(seconds);
+        refreshMaxInactiveInterval();
+        IdleSessionReaper.recordIntervalChange(session);
+        return this;
+    }
+
+    /**
+     * Check if max inactive interval of session has changed, and update it to IdleAlarms and labels if it has
+     */
+    void refreshMaxInactiveInterval() {
+        if(maxInactiveInterval < 1 || session == null || session.getSession() == null) {
+            return;
+        }
+        int current = session.getSession().getMaxInactiveInterval();
+        if(current > 0 && current != maxInactiveInterval) {
+            maxInactiveInterval = current;
+            alarms.values().forEach(alarm -> alarm.updateMaxInactiveInterval(current));
+            labels.forEach(label -> label.updateMaxInactiveInterval(current));
+        }
+    }
+
+    /**
+     * Get default configuration of IdleAlarms of session
+     * @return Configuration template
+     */
+    public IdleAlarmConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Set default configuration of IdleAlarms of session. Configuration is applied to existing IdleAlarms, replacing
+     * values defined earlier, and IdleAlarms created later will use it.
+     * @param config Configuration template
+     * @return This controller to allow command chaining
+     */
+    public IdleSessionController setConfig(IdleAlarmConfig config) {
+        this.config = Objects.requireNonNull(config);
+        alarms.values().forEach(alarm -> alarm.setConfig(config));
+        return this;
+    }
+
+    /**
+     * Add listener called when session reaches given idle stage. Listener is called once per idle period, with
+     * session locked, by background thread. Stages due already are reached right after listener is added.
+     * @param stage Stage listened
+     * @param listener Listener called
+     * @return Registration used to remove listener
+     */
+    public Registration addIdleStageListener(IdleStage stage, IdleStageListener listener) {
+        StageListener stageListener = new StageListener(Objects.requireNonNull(stage),
+                Objects.requireNonNull(listener));
+        stageListeners.add(stageListener);
+        IdleStageTracker.get(session.getService()).track(session);
+        return () -> stageListeners.remove(stageListener);
+    }
+
+    boolean hasIdleStageListeners() {
+        return !stageListeners.isEmpty();
+    }
+
+    /**
+     * Get stages listened
+     * @return Stages in order of registration
+     */
+    Set<IdleStage> getIdleStages() {
+        Set<IdleStage> stages = new LinkedHashSet<>();
+        stageListeners.forEach(stageListener -> stages.add(stageListener.stage));
+        return stages;
+    }
+
+    /**
+     * Call listeners of given stage. Session has to be locked.
+     * @param stage Stage reached
+     * @param idleMillis Time session has been idle
+     * @param millisLeft Time left before session expires
+     */
+    void fireIdleStage(IdleStage stage, long idleMillis, long millisLeft) {
+        IdleStageEvent event = new IdleStageEvent(this, stage, idleMillis, millisLeft);
+        // Copied, as listeners might remove themselves
+        for(StageListener stageListener : new ArrayList<>(stageListeners)) {
+            if(stageListener.stage.equals(stage)) {
+                try {
+                    stageListener.listener.idleStageReached(event);
+                } catch(RuntimeException e) {
+                    session.getErrorHandler().error(new ErrorEvent(e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get IdleAlarms of UIs of session
+     * @return IdleAlarms
+     */
+    public Collection<IdleAlarm> getAlarms() {
+        return Collections.unmodifiableCollection(new ArrayList<>(alarms.values()));
+    }
+
+    /**
+     * Get random key shared by all UIs of session, used to find browser tabs of same session
+     * @return Key of session
+     */
+    String getCrossTabKey() {
+        if(crossTabKey == null) {
+            crossTabKey = UUID.randomUUID().toString();
+        }
+        return crossTabKey;
+    }
+
+    /**
+     * Called when UI of session makes request. Session has to be locked.
+     * @param uiId Id of UI making request
+     * @param now Current time in milliseconds
+     */
+    void requestReceived(int uiId, long now) {
+        refreshMaxInactiveInterval();
+        if(hasIdleStageListeners()) {
+            // Also tracks sessions deserialized with listeners
+            IdleStageTracker.get(session.getService()).track(session);
+        }
+        for(Map.Entry<Integer,IdleAlarm> entry : alarms.entrySet()) {
+            IdleAlarm alarm = entry.getValue();
+            if(entry.getKey() == uiId) {
+                if(now - alarm.getLastSync() >= OWN_UI_SYNC_MILLIS) {
+                    alarm.markAsDirty();
+                }
+            } else if(now - alarm.getLastSync() >= OTHER_UI_SYNC_MILLIS && isPushedAutomatically(alarm)) {
+                // Pushed when session is unlocked
+                alarm.markAsDirty();
+            }
+        }
+    }
+
+    /**
+     * Called when client of UI asks to extend the session. Session has to be locked.
+     * @param now Current time in milliseconds
+     * @return true if this is first keep-alive of period, and has to be recorded to reaper
+     */
+    boolean keepAlive(long now) {
+        if(now - lastKeepAlive >= KEEP_ALIVE_COALESCE_MILLIS || now < lastKeepAlive) {
+            lastKeepAlive = now;
+            return true;
+        }
+        return false;
+    }
+
+    IdleAlarm find(UI ui) {
+        return find(ui.getUIId());
+    }
+
+    IdleAlarm find(int uiId) {
+        return alarms.get(uiId);
+    }
+
+    void register(UI ui, IdleAlarm alarm) {
+        alarms.put(ui.getUIId(), alarm);
+    }
+
+    void unregister(UI ui, IdleAlarm alarm) {
+        alarms.remove(ui.getUIId(), alarm);
+    }
+
+    void register(IdleCountdownLabel label) {
+        labels.add(label);
+    }
+
+    void unregister(IdleCountdownLabel label) {
+        labels.remove(label);
+    }
+
+    /**
+     * Check if session has IdleAlarms or IdleCountdownLabels showing the deadline
+     * @return true if deadline is shown by any UI
+     */
+    boolean hasClients() {
+        return !alarms.isEmpty() || !labels.isEmpty();
+    }
+
+    /**
+     * Check if all UIs of session use automatic push, so their clients get changes of deadline without requests.
+     * Session has to be locked.
+     * @return true if all UIs are pushed automatically
+     */
+    boolean isPushedAutomatically() {
+        // Passivated UIs do not use push
+        return session.getUIs().stream().allMatch(IdleSessionController::isPushedAutomatically)
+                && !IdleUIPassivator.get(session.getService())
+                        .map(passivator -> passivator.hasPassivated(session)).orElse(false);
+    }
+
+    private static boolean isPushedAutomatically(IdleAlarm alarm) {
+        return isPushedAutomatically(alarm.getUI());
+    }
+
+    private static boolean isPushedAutomatically(UI ui) {
+        return ui != null && ui.getPushConfiguration().getPushMode() == PushMode.AUTOMATIC;
+    }
+}
@@ -0,0 +1,308 @@
+package org.vaadin.alump.idlealarm;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.server.WrappedSession;
+
+/**
+ * Optional server side component that invalidates idle sessions as soon as their idle timeout has passed, instead of
+ * waiting servlet container to sweep those. Deadlines of sessions are tracked in hierarchical timing wheel, and
+ * sessions are invalidated in parallel by worker threads.
+ * <p>
+ * Activity of session is resolved from IdleAlarm's timeout reset calls and from UIDL requests of session (same
+ * timestamp Vaadin uses to close idle sessions). Reaper requires closeIdleSessions to be enabled, and should be
+ * installed when servlet is initialized.
+ */
+public class IdleSessionReaper {
+
+    private final static Logger LOGGER = Logger.getLogger(IdleSessionReaper.class.getName());
+
+    /**
+     * Default length of tick in milliseconds. Sessions are invalidated at most two ticks after their deadline.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 250L;
+
+    /**
+     * How often sessions without idle timeout are checked again, as timeout can be changed at runtime
+     */
+    private static final long RECHECK_MILLIS = 60000L;
+
+    private static final Map<VaadinService,IdleSessionReaper> reapers = new ConcurrentHashMap<>();
+
+    private static class SessionEntry {
+        private final VaadinSession session;
+        private volatile long lastActivity;
+        private volatile boolean removed = false;
+
+        private SessionEntry(VaadinSession session, long lastActivity) {
+            this.session = session;
+            this.lastActivity = lastActivity;
+        }
+    }
+
+    private static class ScheduledEntry {
+        private final SessionEntry entry;
+        private final long deadline;
+
+        private ScheduledEntry(SessionEntry entry, long deadline) {
+            this.entry = entry;
+            this.deadline = deadline;
+        }
+    }
+
+    private final Map<VaadinSession,SessionEntry> entries = new ConcurrentHashMap<>();
+    private final Queue<ScheduledEntry> pending = new ConcurrentLinkedQueue<>();
+    private final HierarchicalTimingWheel<SessionEntry> wheel;
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService invalidator;
+
+    protected IdleSessionReaper(VaadinService service, long tickMillis, int invalidationThreads) {
+        wheel = new HierarchicalTimingWheel<>(tickMillis, 4, 6, System.currentTimeMillis());
+        ticker = Executors.newSingleThreadScheduledExecutor(
+                IdleTimeoutServerUtil.createThreadFactory("idlealarm-reaper"));
+        invalidator = Executors.newFixedThreadPool(invalidationThreads,
+                IdleTimeoutServerUtil.createThreadFactory("idlealarm-reaper-worker"));
+
+        service.addSessionInitListener(event -> track(event.getSession()));
+        service.addSessionDestroyListener(event -> untrack(event.getSession()));
+        service.addServiceDestroyListener(event -> uninstall(service));
+
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Install reaper to given service with default tick length and one worker thread per processor. If reaper is
+     * already installed, existing instance is returned.
+     * @param service Service which idle sessions are invalidated
+     * @return Reaper of service
+     * @throws IllegalStateException If service does not close idle sessions
+     */
+    public static IdleSessionReaper install(VaadinService service) throws IllegalStateException {
+        return install(service, DEFAULT_TICK_MILLIS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Install reaper to given service. If reaper is already installed, existing instance is returned.
+     * @param service Service which idle sessions are invalidated
+     * @param tickMillis Length of tick in milliseconds
+     * @param invalidationThreads Amount of worker threads invalidating sessions
+     * @return Reaper of service
+     * @throws IllegalStateException If service does not close idle sessions
+     */
+    public static IdleSessionReaper install(VaadinService service, long tickMillis, int invalidationThreads)
+            throws IllegalStateException {
+        if(service == null) {
+            throw new IllegalArgumentException("Service can not be null");
+        }
+        if(tickMillis < 1 || invalidationThreads < 1) {
+            throw new IllegalArgumentException("Invalid tick length or amount of threads given");
+        }
+        if(!IdleTimeoutServerUtil.isCloseIdleSessions(service)) {
+            throw new IllegalStateException("Idle sessions are not closed. IdleSessionReaper can not be used.");
+        }
+        return reapers.computeIfAbsent(service, s -> new IdleSessionReaper(s, tickMillis, invalidationThreads));
+    }
+
+    /**
+     * Get reaper installed to given service
+     * @param service Service of reaper
+     * @return Reaper if installed
+     */
+    public static Optional<IdleSessionReaper> get(VaadinService service) {
+        return Optional.ofNullable(service == null ? null : reapers.get(service));
+    }
+
+    /**
+     * Records activity of given session to reaper of its service, if reaper is installed.
+     * @param session Session that was active
+     */
+    public static void recordActivity(VaadinSession session) {
+        if(session != null) {
+            get(session.getService()).ifPresent(reaper -> reaper.touch(session));
+        }
+    }
+
+    /**
+     * Tells reaper of session's service, if installed, that max inactive interval of given session has changed.
+     * Deadline of session is resolved again, so shortened timeouts are noticed before the old deadline.
+     * @param session Session which interval changed
+     */
+    public static void recordIntervalChange(VaadinSession session) {
+        if(session != null) {
+            get(session.getService()).ifPresent(reaper -> reaper.reschedule(session));
+        }
+    }
+
+    /**
+     * Stops reaper of given service. Called automatically when service is destroyed.
+     * @param service Service of reaper
+     */
+    public static void uninstall(VaadinService service) {
+        IdleSessionReaper reaper = reapers.remove(service);
+        if(reaper != null) {
+            reaper.ticker.shutdownNow();
+            reaper.invalidator.shutdownNow();
+            reaper.entries.clear();
+        }
+    }
+
+    /**
+     * Start tracking given session. Sessions are tracked automatically when created, this is only needed for
+     * sessions restored otherwise (eg. deserialized).
+     * @param session Session tracked
+     */
+    public void track(VaadinSession session) {
+        getEntry(session);
+    }
+
+    /**
+     * Mark given session active now
+     * @param session Session that was active
+     */
+    public void touch(VaadinSession session) {
+        getEntry(session).lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Resolve deadline of given session again, eg. when its max inactive interval has changed
+     * @param session Session rescheduled
+     */
+    public void reschedule(VaadinSession session) {
+        SessionEntry entry = getEntry(session);
+        try {
+            // Earlier deadline is found from wheel, later one is scheduled again when the old deadline is due
+            schedule(entry, resolveDeadline(session, entry.lastActivity));
+        } catch(IllegalStateException e) {
+            // Session was already invalidated by someone else
+            untrack(session);
+        }
+    }
+
+    /**
+     * Amount of sessions tracked
+     * @return Amount of sessions
+     */
+    public int getTrackedSessionCount() {
+        return entries.size();
+    }
+
+    private SessionEntry getEntry(VaadinSession session) {
+        SessionEntry entry = entries.get(session);
+        if(entry == null) {
+            SessionEntry created = new SessionEntry(session, System.currentTimeMillis());
+            entry = entries.putIfAbsent(session, created);
+            if(entry == null) {
+                entry = created;
+                schedule(entry, resolveDeadline(session, entry.lastActivity));
+            }
+        }
+        return entry;
+    }
+
+    private void untrack(VaadinSession session) {
+        SessionEntry entry = entries.remove(session);
+        if(entry != null) {
+            entry.removed = true;
+        }
+    }
+
+    private void schedule(SessionEntry entry, long deadline) {
+        pending.add(new ScheduledEntry(entry, deadline));
+    }
+
+    private void tick() {
+        try {
+            ScheduledEntry scheduled;
+            while((scheduled = pending.poll()) != null) {
+                if(!scheduled.entry.removed) {
+                    wheel.schedule(scheduled.entry, scheduled.deadline);
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            wheel.advance(now, entry -> expired(entry, now));
+        } catch(RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to advance idle session reaper", e);
+        }
+    }
+
+    private void expired(SessionEntry entry, long now) {
+        if(entry.removed) {
+            return;
+        }
+
+        try {
+            long deadline = resolveDeadline(entry.session, entry.lastActivity);
+            if(deadline > now) {
+                wheel.schedule(entry, deadline);
+            } else {
+                invalidator.execute(() -> invalidate(entry));
+            }
+        } catch(IllegalStateException e) {
+            // Session was already invalidated by someone else
+            untrack(entry.session);
+        }
+    }
+
+    private void invalidate(SessionEntry entry) {
+        VaadinSession session = entry.session;
+        boolean[] expired = new boolean[] { false };
+
+        try {
+            session.accessSynchronously(() -> {
+                if(entry.removed || session.getState() != VaadinSession.State.OPEN) {
+                    return;
+                }
+
+                // UIDL requests are tracked by Vaadin, so take those into account here
+                long lastActivity = Math.max(entry.lastActivity, session.getLastRequestTimestamp());
+                long deadline = resolveDeadline(session, lastActivity);
+                if(deadline > System.currentTimeMillis()) {
+                    entry.lastActivity = lastActivity;
+                    schedule(entry, deadline);
+                } else {
+                    session.close();
+                    expired[0] = true;
+                }
+            });
+
+            if(expired[0]) {
+                untrack(session);
+                WrappedSession wrappedSession = session.getSession();
+                if(wrappedSession != null) {
+                    wrappedSession.invalidate();
+                }
+            }
+        } catch(IllegalStateException e) {
+            // Session was already invalidated by someone else
+            untrack(session);
+        } catch(RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to invalidate idle session", e);
+        }
+    }
+
+    /**
+     * Resolve deadline of session. Sessions without idle timeout get deadline when those are checked again.
+     * @throws IllegalStateException If session has been invalidated
+     */
+    private static long resolveDeadline(VaadinSession session, long lastActivity) throws IllegalStateException {
+        WrappedSession wrappedSession = session.getSession();
+        int maxInactiveInterval = wrappedSession == null ? -1 : wrappedSession.getMaxInactiveInterval();
+        if(maxInactiveInterval < 1) {
+            return System.currentTimeMillis() + RECHECK_MILLIS;
+        }
+        return lastActivity + maxInactiveInterval * 1000L;
+    }
+}
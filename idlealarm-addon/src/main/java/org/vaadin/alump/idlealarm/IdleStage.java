@@ -0,0 +1,108 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Named stage of idle period of session. Stage is reached when session has been idle for given time, or when given
+ * time is left before session expires. Listeners of stage are called once per idle period, and again after the
+ * session has been active.
+ * @see IdleSessionController#addIdleStageListener(IdleStage, IdleStageListener)
+ */
+public final class IdleStage implements Serializable {
+
+    private enum Type {
+        IDLE_FOR, TIME_LEFT, WARNING
+    }
+
+    /**
+     * Warning of IdleAlarm is shown. Time is resolved from seconds before of session's default configuration.
+     */
+    public static final IdleStage WARNING_SHOWN = new IdleStage("warning shown", Type.WARNING, 0);
+
+    /**
+     * Session has expired because of idle timeout
+     */
+    public static final IdleStage EXPIRED = new IdleStage("expired", Type.TIME_LEFT, 0);
+
+    private final String name;
+    private final Type type;
+    private final int seconds;
+
+    private IdleStage(String name, Type type, int seconds) {
+        this.name = Objects.requireNonNull(name);
+        this.type = type;
+        this.seconds = seconds;
+    }
+
+    /**
+     * Stage reached when session has been idle for given time
+     * @param name Name of stage
+     * @param seconds Idle time in seconds
+     * @return Stage
+     * @throws IllegalArgumentException If given value is smaller than 1 seconds
+     */
+    public static IdleStage idleFor(String name, int seconds) throws IllegalArgumentException {
+        if(seconds < 1) {
+            throw new IllegalArgumentException("Invalid amount of seconds (" + seconds + ") given");
+        }
+        return new IdleStage(name, Type.IDLE_FOR, seconds);
+    }
+
+    /**
+     * Stage reached when given time is left before session expires
+     * @param name Name of stage
+     * @param seconds Time left in seconds
+     * @return Stage
+     * @throws IllegalArgumentException If given value is negative
+     */
+    public static IdleStage timeLeft(String name, int seconds) throws IllegalArgumentException {
+        if(seconds < 0) {
+            throw new IllegalArgumentException("Invalid amount of seconds (" + seconds + ") given");
+        }
+        return new IdleStage(name, Type.TIME_LEFT, seconds);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Resolve time when stage is reached
+     * @param lastActivity Time of last activity of session in milliseconds
+     * @param maxInactiveInterval Max inactive interval of session in seconds
+     * @param secondsBefore Seconds before timeout when warning is shown
+     * @return Time in milliseconds
+     */
+    long resolveTime(long lastActivity, int maxInactiveInterval, int secondsBefore) {
+        switch(type) {
+            case IDLE_FOR:
+                return lastActivity + seconds * 1000L;
+            case WARNING:
+                return lastActivity + (maxInactiveInterval - secondsBefore) * 1000L;
+            default:
+                return lastActivity + (maxInactiveInterval - seconds) * 1000L;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other) {
+            return true;
+        } else if(!(other instanceof IdleStage)) {
+            return false;
+        }
+        IdleStage stage = (IdleStage)other;
+        return type == stage.type && seconds == stage.seconds && name.equals(stage.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, type, seconds);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
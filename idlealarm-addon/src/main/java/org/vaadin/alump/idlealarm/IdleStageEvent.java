@@ -0,0 +1,50 @@
+package org.vaadin.alump.idlealarm;
+
+import java.util.EventObject;
+
+import com.vaadin.server.VaadinSession;
+
+/**
+ * Event called when session reaches idle stage
+ */
+public class IdleStageEvent extends EventObject {
+
+    private final IdleStage stage;
+    private final long idleMillis;
+    private final long millisLeft;
+
+    public IdleStageEvent(IdleSessionController controller, IdleStage stage, long idleMillis, long millisLeft) {
+        super(controller);
+        this.stage = stage;
+        this.idleMillis = idleMillis;
+        this.millisLeft = millisLeft;
+    }
+
+    public IdleSessionController getController() {
+        return (IdleSessionController)getSource();
+    }
+
+    public VaadinSession getSession() {
+        return getController().getSession();
+    }
+
+    public IdleStage getStage() {
+        return stage;
+    }
+
+    /**
+     * Get time session has been idle
+     * @return Time in milliseconds
+     */
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+
+    /**
+     * Get time left before session expires
+     * @return Time in milliseconds, zero or negative if expired
+     */
+    public long getMillisLeft() {
+        return millisLeft;
+    }
+}
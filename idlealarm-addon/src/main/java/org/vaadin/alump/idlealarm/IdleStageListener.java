@@ -0,0 +1,16 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.Serializable;
+
+/**
+ * Listener of idle stages of session. Called by background thread with session locked, without requests of client.
+ */
+@FunctionalInterface
+public interface IdleStageListener extends Serializable {
+
+    /**
+     * Called when session reaches idle stage listened
+     * @param event Stage event
+     */
+    void idleStageReached(IdleStageEvent event);
+}
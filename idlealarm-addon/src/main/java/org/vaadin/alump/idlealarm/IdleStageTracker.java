@@ -0,0 +1,216 @@
+package org.vaadin.alump.idlealarm;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.server.WrappedSession;
+
+/**
+ * Tracks idle stages of sessions having {@link IdleStageListener}s. Background thread checks sessions when their next
+ * stage is due, and calls listeners with session locked, so stages are reached without requests of clients. Tracker
+ * of service is started when first listener is added.
+ */
+class IdleStageTracker {
+
+    private final static Logger LOGGER = Logger.getLogger(IdleStageTracker.class.getName());
+
+    /**
+     * Stages are reached at most this late
+     */
+    static final long TICK_MILLIS = 1000L;
+
+    /**
+     * Sessions are checked at least this often, as idle timeout can be changed at runtime
+     */
+    private static final long RECHECK_MILLIS = 60000L;
+
+    private static final Map<VaadinService,IdleStageTracker> trackers = new ConcurrentHashMap<>();
+
+    private static class SessionEntry {
+        private final VaadinSession session;
+        private final AtomicBoolean checkQueued = new AtomicBoolean(false);
+        private volatile long nextCheck;
+        private volatile boolean anyReached = false;
+        // Accessed only with session locked
+        private final Set<IdleStage> reached = new HashSet<>();
+        private long periodStart = Long.MIN_VALUE;
+        private int maxInactiveInterval = -1;
+
+        private SessionEntry(VaadinSession session, long nextCheck) {
+            this.session = session;
+            this.nextCheck = nextCheck;
+        }
+    }
+
+    private final Map<VaadinSession,SessionEntry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+
+    private IdleStageTracker(VaadinService service) {
+        ticker = Executors.newSingleThreadScheduledExecutor(
+                IdleTimeoutServerUtil.createThreadFactory("idlealarm-stages"));
+
+        service.addSessionDestroyListener(event -> sessionDestroyed(event.getSession()));
+        service.addServiceDestroyListener(event -> uninstall(service));
+
+        ticker.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get tracker of given service, tracker is started if missing
+     * @param service Service of tracker
+     * @return Tracker of service
+     */
+    static IdleStageTracker get(VaadinService service) {
+        return trackers.computeIfAbsent(service, IdleStageTracker::new);
+    }
+
+    /**
+     * Records activity of given session to tracker of its service, if session is tracked. Stages reached already are
+     * checked again, so those are reached again in the new idle period.
+     * @param session Session that was active
+     */
+    static void recordActivity(VaadinSession session) {
+        IdleStageTracker tracker = session == null ? null : trackers.get(session.getService());
+        if(tracker != null) {
+            SessionEntry entry = tracker.entries.get(session);
+            if(entry != null && entry.anyReached) {
+                entry.nextCheck = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Stops tracker of given service. Called automatically when service is destroyed.
+     * @param service Service of tracker
+     */
+    static void uninstall(VaadinService service) {
+        IdleStageTracker tracker = trackers.remove(service);
+        if(tracker != null) {
+            tracker.ticker.shutdownNow();
+            tracker.entries.clear();
+        }
+    }
+
+    /**
+     * Start tracking given session, or check it again if already tracked. Session is untracked when it does not
+     * have listeners anymore.
+     * @param session Session tracked
+     */
+    void track(VaadinSession session) {
+        long now = System.currentTimeMillis();
+        SessionEntry entry = entries.computeIfAbsent(session, s -> new SessionEntry(s, now));
+        if(entry.anyReached) {
+            entry.nextCheck = now;
+        }
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            for(SessionEntry entry : entries.values()) {
+                if(now >= entry.nextCheck && entry.checkQueued.compareAndSet(false, true)) {
+                    // Run right away if session is not locked, otherwise when lock is released
+                    entry.session.access(() -> {
+                        try {
+                            check(entry, false);
+                        } finally {
+                            entry.checkQueued.set(false);
+                        }
+                    });
+                }
+            }
+        } catch(RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to check idle stages", e);
+        }
+    }
+
+    private void sessionDestroyed(VaadinSession session) {
+        SessionEntry entry = entries.remove(session);
+        if(entry != null) {
+            // Stages due (eg. expired) are reached even if session is closed before tracker noticed them
+            check(entry, true);
+        }
+    }
+
+    /**
+     * Reach stages that are due. Session has to be locked.
+     */
+    private void check(SessionEntry entry, boolean closing) {
+        VaadinSession session = entry.session;
+        IdleSessionController controller = IdleSessionController.find(session);
+        if(controller == null || !controller.hasIdleStageListeners()
+                || (!closing && session.getState() != VaadinSession.State.OPEN)) {
+            entries.remove(session, entry);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int maxInactiveInterval = resolveMaxInactiveInterval(entry);
+        if(maxInactiveInterval < 1) {
+            entry.nextCheck = now + RECHECK_MILLIS;
+            return;
+        }
+
+        long lastActivity = session.getLastRequestTimestamp();
+        if(lastActivity != entry.periodStart) {
+            entry.periodStart = lastActivity;
+            entry.reached.clear();
+        }
+
+        int secondsBefore = IdleAlarm.limitSecondsBefore(controller.getConfig().getSecondsBefore(),
+                maxInactiveInterval);
+        List<IdleStage> due = new ArrayList<>();
+        long nextCheck = now + RECHECK_MILLIS;
+        for(IdleStage stage : controller.getIdleStages()) {
+            if(entry.reached.contains(stage)) {
+                continue;
+            }
+            long time = stage.resolveTime(lastActivity, maxInactiveInterval, secondsBefore);
+            if(time <= now) {
+                due.add(stage);
+            } else {
+                nextCheck = Math.min(nextCheck, time);
+            }
+        }
+
+        // Stages are reached in order, even if those are handled late
+        due.sort(Comparator.comparingLong(stage -> stage.resolveTime(lastActivity, maxInactiveInterval,
+                secondsBefore)));
+        long deadline = lastActivity + maxInactiveInterval * 1000L;
+        for(IdleStage stage : due) {
+            entry.reached.add(stage);
+            controller.fireIdleStage(stage, now - lastActivity, deadline - now);
+        }
+
+        entry.anyReached = !entry.reached.isEmpty();
+        entry.nextCheck = nextCheck;
+    }
+
+    /**
+     * Resolve max inactive interval of session. Last known value is used when session has been invalidated.
+     */
+    private static int resolveMaxInactiveInterval(SessionEntry entry) {
+        try {
+            WrappedSession wrappedSession = entry.session.getSession();
+            if(wrappedSession != null) {
+                entry.maxInactiveInterval = wrappedSession.getMaxInactiveInterval();
+            }
+        } catch(IllegalStateException e) {
+            // Session was invalidated
+        }
+        return entry.maxInactiveInterval;
+    }
+}
@@ -0,0 +1,360 @@
+package org.vaadin.alump.idlealarm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.server.WrappedSession;
+
+/**
+ * Optional server side policy that shortens idle timeout of sessions when heap is running out. Pressure is heap used
+ * after garbage collection (tenured pools) relative to max heap. It's sampled periodically, and right away when
+ * collection usage threshold of pool is exceeded.
+ * <p>
+ * When pressure rises above high watermark, timeouts are shortened in steps towards the floor value, reaching it when
+ * heap is full. Timeouts are only shortened further while pressure stays above low watermark, and normal timeouts are
+ * restored when it drops below it. New timeouts are given to {@link IdleSessionController}s, which push them to
+ * clients. Clients without push would only learn the new deadline with their next request, and idle users would lose
+ * their session before the warning, so sessions with IdleAlarms or IdleCountdownLabels are only shortened when all
+ * their UIs use automatic push. Such sessions are not shortened below their idle time plus seconds before warning,
+ * so clients still show the warning. Sessions without those are shortened regardless of push.
+ */
+public class IdleTimeoutMemoryPolicy {
+
+    private final static Logger LOGGER = Logger.getLogger(IdleTimeoutMemoryPolicy.class.getName());
+
+    public static final double DEFAULT_HIGH_WATERMARK = 0.85;
+
+    public static final double DEFAULT_LOW_WATERMARK = 0.7;
+
+    /**
+     * How often pressure is sampled
+     */
+    static final long SAMPLE_MILLIS = 2000L;
+
+    /**
+     * Timeouts are changed in this many steps between normal and floor value, so clients are not updated on every
+     * sample
+     */
+    private static final int STEPS = 10;
+
+    private static final Map<VaadinService,IdleTimeoutMemoryPolicy> policies = new ConcurrentHashMap<>();
+
+    private final int floorSeconds;
+    private final double highWatermark;
+    private final double lowWatermark;
+    private final Set<VaadinSession> sessions = ConcurrentHashMap.newKeySet();
+    // Normal intervals of sessions currently shortened
+    private final Map<VaadinSession,Integer> normalIntervals = new ConcurrentHashMap<>();
+    private final List<MemoryPoolMXBean> thresholdPools = new ArrayList<>();
+    private final NotificationListener collectionListener;
+    private final ScheduledExecutorService sampler;
+    private volatile double pressure = 0.0;
+    private volatile double timeoutFactor = 1.0;
+
+    protected IdleTimeoutMemoryPolicy(VaadinService service, int floorSeconds, double highWatermark,
+            double lowWatermark) {
+        this.floorSeconds = floorSeconds;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        sampler = Executors.newSingleThreadScheduledExecutor(
+                IdleTimeoutServerUtil.createThreadFactory("idlealarm-memory-policy"));
+        collectionListener = (notification, handback) -> sampler.execute(this::sample);
+
+        service.addSessionInitListener(event -> track(event.getSession()));
+        service.addSessionDestroyListener(event -> untrack(event.getSession()));
+        service.addServiceDestroyListener(event -> uninstall(service));
+
+        listenCollections();
+        sampler.scheduleWithFixedDelay(this::sample, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Install policy to given service with default watermarks. If policy is already installed, existing instance is
+     * returned.
+     * @param service Service which sessions are shortened
+     * @param floorSeconds Shortest idle timeout in seconds
+     * @return Policy of service
+     */
+    public static IdleTimeoutMemoryPolicy install(VaadinService service, int floorSeconds) {
+        return install(service, floorSeconds, DEFAULT_HIGH_WATERMARK, DEFAULT_LOW_WATERMARK);
+    }
+
+    /**
+     * Install policy to given service. If policy is already installed, existing instance is returned.
+     * @param service Service which sessions are shortened
+     * @param floorSeconds Shortest idle timeout in seconds
+     * @param highWatermark Pressure (0..1) above which timeouts are shortened
+     * @param lowWatermark Pressure (0..1) below which normal timeouts are restored
+     * @return Policy of service
+     */
+    public static IdleTimeoutMemoryPolicy install(VaadinService service, int floorSeconds, double highWatermark,
+            double lowWatermark) {
+        if(service == null) {
+            throw new IllegalArgumentException("Service can not be null");
+        }
+        if(floorSeconds < 1) {
+            throw new IllegalArgumentException("Invalid amount of seconds (" + floorSeconds + ") given");
+        }
+        if(!(lowWatermark > 0.0 && lowWatermark < highWatermark && highWatermark < 1.0)) {
+            throw new IllegalArgumentException("Invalid watermarks (" + lowWatermark + ", " + highWatermark
+                    + ") given");
+        }
+        return policies.computeIfAbsent(service,
+                s -> new IdleTimeoutMemoryPolicy(s, floorSeconds, highWatermark, lowWatermark));
+    }
+
+    /**
+     * Get policy installed to given service
+     * @param service Service of policy
+     * @return Policy if installed
+     */
+    public static Optional<IdleTimeoutMemoryPolicy> get(VaadinService service) {
+        return Optional.ofNullable(service == null ? null : policies.get(service));
+    }
+
+    /**
+     * Stops policy of given service. Normal timeouts are not restored. Called automatically when service is
+     * destroyed.
+     * @param service Service of policy
+     */
+    public static void uninstall(VaadinService service) {
+        IdleTimeoutMemoryPolicy policy = policies.remove(service);
+        if(policy != null) {
+            policy.sampler.shutdownNow();
+            policy.stopListeningCollections();
+            policy.sessions.clear();
+            policy.normalIntervals.clear();
+        }
+    }
+
+    /**
+     * Start tracking given session. Sessions are tracked automatically when created, this is only needed for
+     * sessions restored otherwise (eg. deserialized).
+     * @param session Session tracked
+     */
+    public void track(VaadinSession session) {
+        if(sessions.add(session)) {
+            double factor = timeoutFactor;
+            if(factor < 1.0) {
+                session.access(() -> adjust(session, factor));
+            }
+        }
+    }
+
+    /**
+     * Get last sampled memory pressure
+     * @return Heap used after collection relative to max heap (0..1)
+     */
+    public double getPressure() {
+        return pressure;
+    }
+
+    /**
+     * Get current factor of timeouts
+     * @return 1 when timeouts are normal, 0 when timeouts are at floor value
+     */
+    public double getTimeoutFactor() {
+        return timeoutFactor;
+    }
+
+    /**
+     * Amount of sessions which timeout is currently shortened
+     * @return Amount of sessions
+     */
+    public int getShortenedSessionCount() {
+        return normalIntervals.size();
+    }
+
+    public int getFloorSeconds() {
+        return floorSeconds;
+    }
+
+    public double getHighWatermark() {
+        return highWatermark;
+    }
+
+    public double getLowWatermark() {
+        return lowWatermark;
+    }
+
+    private void untrack(VaadinSession session) {
+        sessions.remove(session);
+        normalIntervals.remove(session);
+    }
+
+    private void sample() {
+        try {
+            pressure = measurePressure();
+
+            double factor = timeoutFactor;
+            if(pressure >= highWatermark) {
+                // Only shortened further while pressure is high
+                double level = 1.0 - (pressure - highWatermark) / (1.0 - highWatermark);
+                factor = Math.min(factor, Math.max(0.0, Math.floor(level * STEPS) / STEPS));
+            } else if(pressure <= lowWatermark) {
+                factor = 1.0;
+            }
+
+            if(factor != timeoutFactor) {
+                LOGGER.log(Level.INFO, "Memory pressure {0}, idle timeouts scaled by {1}",
+                        new Object[] { pressure, factor });
+                timeoutFactor = factor;
+                apply(factor);
+            }
+        } catch(RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to apply memory pressure to idle timeouts", e);
+        }
+    }
+
+    private void apply(double factor) {
+        for(VaadinSession session : sessions) {
+            // Run right away if session is not locked, otherwise when lock is released
+            session.access(() -> adjust(session, factor));
+        }
+    }
+
+    /**
+     * Adjust max inactive interval of session by given factor. Session has to be locked.
+     */
+    private void adjust(VaadinSession session, double factor) {
+        // Factor may have changed while waiting for lock
+        if(factor != timeoutFactor || session.getState() != VaadinSession.State.OPEN) {
+            return;
+        }
+
+        try {
+            WrappedSession wrappedSession = session.getSession();
+            if(wrappedSession == null) {
+                return;
+            }
+
+            IdleSessionController controller = IdleSessionController.find(session);
+            Integer normal = normalIntervals.get(session);
+            if(factor >= 1.0) {
+                if(normal != null) {
+                    normalIntervals.remove(session);
+                    setMaxInactiveInterval(session, controller, normal);
+                }
+                return;
+            }
+
+            if(controller != null && controller.hasClients() && !controller.isPushedAutomatically()) {
+                // Clients without push would not know the new deadline, current one is known by all clients
+                return;
+            }
+
+            int current = wrappedSession.getMaxInactiveInterval();
+            if(normal == null) {
+                if(current <= floorSeconds) {
+                    return;
+                }
+                normal = current;
+                normalIntervals.put(session, normal);
+            }
+
+            long target = Math.round(floorSeconds + (normal - floorSeconds) * factor);
+            if(controller != null) {
+                // Deadline is not moved into warning period, so clients still show the warning
+                long idleSeconds = (System.currentTimeMillis() - session.getLastRequestTimestamp()) / 1000L;
+                int secondsBefore = IdleAlarm.limitSecondsBefore(controller.getConfig().getSecondsBefore(), normal);
+                target = Math.min(normal, Math.max(target, idleSeconds + secondsBefore));
+            }
+            if(target != current) {
+                setMaxInactiveInterval(session, controller, (int)target);
+            }
+        } catch(IllegalStateException e) {
+            // Session was invalidated
+            untrack(session);
+        }
+    }
+
+    private static void setMaxInactiveInterval(VaadinSession session, IdleSessionController controller,
+            int seconds) {
+        if(controller != null) {
+            controller.setMaxInactiveInterval(seconds);
+        } else {
+            session.getSession().setMaxInactiveInterval(seconds);
+            IdleSessionReaper.recordIntervalChange(session);
+        }
+    }
+
+    /**
+     * Resolve heap used after last collection relative to max heap. Tenured pools are identified by their support
+     * of usage thresholds. Current heap usage is used if no such pools are found.
+     */
+    static double measurePressure() {
+        double pressure = -1.0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(isTenuredHeap(pool)) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if(usage != null && usage.getMax() > 0) {
+                    pressure = Math.max(pressure, usage.getUsed() / (double)usage.getMax());
+                }
+            }
+        }
+        if(pressure < 0.0) {
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            pressure = heap.getMax() > 0 ? heap.getUsed() / (double)heap.getMax() : 0.0;
+        }
+        return pressure;
+    }
+
+    private static boolean isTenuredHeap(MemoryPoolMXBean pool) {
+        return pool.getType() == MemoryType.HEAP && pool.isValid() && pool.isUsageThresholdSupported()
+                && pool.isCollectionUsageThresholdSupported();
+    }
+
+    /**
+     * Sample right away when collection leaves tenured pools above high watermark. Thresholds are only set to pools
+     * without threshold, so thresholds set by application are not replaced.
+     */
+    private void listenCollections() {
+        if(!(ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter)) {
+            return;
+        }
+        ((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(collectionListener,
+                notification -> MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED
+                        .equals(notification.getType()), null);
+
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if(isTenuredHeap(pool) && max > 0 && pool.getCollectionUsageThreshold() == 0L) {
+                pool.setCollectionUsageThreshold((long)(max * highWatermark));
+                thresholdPools.add(pool);
+            }
+        }
+    }
+
+    private void stopListeningCollections() {
+        thresholdPools.forEach(pool -> pool.setCollectionUsageThreshold(0L));
+        thresholdPools.clear();
+        if(ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter) {
+            try {
+                ((NotificationEmitter)ManagementFactory.getMemoryMXBean())
+                        .removeNotificationListener(collectionListener);
+            } catch(ListenerNotFoundException e) {
+                // Was not listening
+            }
+        }
+    }
+}
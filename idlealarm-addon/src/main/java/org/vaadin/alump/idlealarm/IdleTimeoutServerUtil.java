@@ -1,12 +1,21 @@
 package org.vaadin.alump.idlealarm;
 
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
 import com.vaadin.ui.UI;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Server side util
  */
 public class IdleTimeoutServerUtil {
 
+    private static final Map<VaadinService,Boolean> closeIdleSessionsCache = new ConcurrentHashMap<>();
+
     /**
      * Resolves max inactive interval from UI
      * @param ui UI used to resolve value
@@ -19,15 +28,60 @@ public class IdleTimeoutServerUtil {
             throw new IllegalArgumentException("UI can not be null");
         }
 
-        if(!ui.getSession().getService().getDeploymentConfiguration().isCloseIdleSessions()) {
+        VaadinSession session = ui.getSession();
+        if(session == null) {
+            throw new IllegalStateException("UI is not attached to session");
+        }
+
+        return resolveMaxInactiveInterval(session);
+    }
+
+    /**
+     * Resolves max inactive interval from session
+     * @param session Session used to resolve value
+     * @return Interval in seconds
+     * @throws IllegalStateException If given session does not have valid max inactive interval defined
+     */
+    public static int resolveMaxInactiveInterval(VaadinSession session) throws IllegalStateException {
+        if(!isCloseIdleSessions(session.getService())) {
             throw new IllegalStateException("Idle sessions are not closed. IdleAlarm can not be used.");
         }
 
-        int maxInactiveInterval = ui.getSession().getSession().getMaxInactiveInterval();
+        int maxInactiveInterval = session.getSession().getMaxInactiveInterval();
         if(maxInactiveInterval < 1) {
             throw new IllegalStateException("MaxInactiveInterval " + maxInactiveInterval + " is not supported by IdleAlarm");
         }
 
         return maxInactiveInterval;
     }
+
+    /**
+     * Checks if given service closes idle sessions. Value is resolved once per service from deployment configuration.
+     * @param service Service checked
+     * @return true if idle sessions are closed
+     */
+    public static boolean isCloseIdleSessions(VaadinService service) {
+        Boolean closeIdleSessions = closeIdleSessionsCache.get(service);
+        if(closeIdleSessions == null) {
+            closeIdleSessions = service.getDeploymentConfiguration().isCloseIdleSessions();
+            if(closeIdleSessionsCache.putIfAbsent(service, closeIdleSessions) == null) {
+                service.addServiceDestroyListener(event -> closeIdleSessionsCache.remove(event.getSource()));
+            }
+        }
+        return closeIdleSessions;
+    }
+
+    /**
+     * Create factory of numbered daemon threads, used by background tasks of add-on
+     * @param name Prefix of thread names
+     * @return Thread factory
+     */
+    static ThreadFactory createThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 }
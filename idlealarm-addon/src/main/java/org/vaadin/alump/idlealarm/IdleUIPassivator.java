@@ -0,0 +1,518 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+import com.vaadin.util.CurrentInstance;
+
+/**
+ * Optional server side component that moves UIs idle for given period from heap to local file store. Passivated UI
+ * is detached and removed from its session, serialized, and written to a file. When the next request of UI arrives
+ * (eg. keep-alive call of IdleAlarm, or any other UIDL request, upload or connector resource request), UI is read
+ * back, attached and added to session before Vaadin handles the request, so client does not notice it. Request
+ * arriving while its UI is being passivated waits for passivation to finish, and restores the UI.
+ * <p>
+ * Heartbeats of passivated UIs are answered without restoring them. UI that misses three heartbeats is dropped from
+ * the store, as Vaadin would close it. UIs using push, and UIs with changes not yet sent to client, are not
+ * passivated. Detach and attach listeners can be used to release and acquire resources of passivated UIs.
+ * <p>
+ * Passivated UIs are not part of serialized session. Passivator requires IdleAlarmServiceInitListener (registered
+ * with ServiceLoader), and should be installed when servlet is initialized.
+ */
+public class IdleUIPassivator {
+
+    private final static Logger LOGGER = Logger.getLogger(IdleUIPassivator.class.getName());
+
+    /**
+     * Default period in milliseconds of looking for idle UIs. UIs are passivated at most this late.
+     */
+    public static final long DEFAULT_SWEEP_MILLIS = 1000L;
+
+    private static final Map<VaadinService,IdleUIPassivator> passivators = new ConcurrentHashMap<>();
+
+    /**
+     * Objects of session replaced when UI is written, so only UI itself is stored
+     */
+    private enum SessionReference {
+        SESSION, CONTROLLER
+    }
+
+    private static class PassivatedUI {
+        private final Path file;
+        private final int size;
+        private volatile long lastHeartbeat;
+
+        private PassivatedUI(Path file, int size, long lastHeartbeat) {
+            this.file = file;
+            this.size = size;
+            this.lastHeartbeat = lastHeartbeat;
+        }
+    }
+
+    private static class SessionEntry {
+        private final VaadinSession session;
+        private final Map<Integer,Long> lastRequests = new ConcurrentHashMap<>();
+        private final Map<Integer,PassivatedUI> passivated = new ConcurrentHashMap<>();
+        // UIs being passivated, requests of those wait for session lock
+        private final Set<Integer> passivating = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean checkQueued = new AtomicBoolean(false);
+        private volatile long nextCheck;
+        private volatile boolean removed = false;
+
+        private SessionEntry(VaadinSession session, long nextCheck) {
+            this.session = session;
+            this.nextCheck = nextCheck;
+        }
+    }
+
+    private final VaadinService service;
+    private final IdleUIStore store;
+    private final long idleMillis;
+    private final Map<VaadinSession,SessionEntry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    protected IdleUIPassivator(VaadinService service, IdleUIStore store, int idleSeconds, long sweepMillis) {
+        this.service = service;
+        this.store = store;
+        this.idleMillis = idleSeconds * 1000L;
+        sweeper = Executors.newSingleThreadScheduledExecutor(
+                IdleTimeoutServerUtil.createThreadFactory("idlealarm-passivator"));
+
+        service.addSessionInitListener(event -> track(event.getSession()));
+        service.addSessionDestroyListener(event -> untrack(event.getSession()));
+        service.addServiceDestroyListener(event -> uninstall(service));
+
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Install passivator to given service, storing UIs to temporary directory. If passivator is already installed,
+     * existing instance is returned.
+     * @param service Service which idle UIs are passivated
+     * @param idleSeconds Seconds without requests before UI is passivated
+     * @return Passivator of service
+     * @throws IOException If temporary directory can not be created
+     */
+    public static IdleUIPassivator install(VaadinService service, int idleSeconds) throws IOException {
+        return install(service, null, idleSeconds, DEFAULT_SWEEP_MILLIS);
+    }
+
+    /**
+     * Install passivator to given service. If passivator is already installed, existing instance is returned.
+     * @param service Service which idle UIs are passivated
+     * @param directory Directory of passivated UIs, or null to use temporary directory
+     * @param idleSeconds Seconds without requests before UI is passivated
+     * @param sweepMillis Period in milliseconds of looking for idle UIs
+     * @return Passivator of service
+     * @throws IOException If directory can not be created
+     */
+    public static IdleUIPassivator install(VaadinService service, Path directory, int idleSeconds, long sweepMillis)
+            throws IOException {
+        if(service == null) {
+            throw new IllegalArgumentException("Service can not be null");
+        }
+        if(idleSeconds < 1) {
+            throw new IllegalArgumentException("Invalid amount of seconds (" + idleSeconds + ") given");
+        }
+        if(sweepMillis < 1) {
+            throw new IllegalArgumentException("Invalid sweep period (" + sweepMillis + ") given");
+        }
+
+        synchronized(passivators) {
+            IdleUIPassivator passivator = passivators.get(service);
+            if(passivator == null) {
+                IdleUIStore store = directory == null
+                        ? new IdleUIStore(Files.createTempDirectory("idlealarm-"), true)
+                        : new IdleUIStore(directory, false);
+                passivator = new IdleUIPassivator(service, store, idleSeconds, sweepMillis);
+                passivators.put(service, passivator);
+            }
+            return passivator;
+        }
+    }
+
+    /**
+     * Get passivator installed to given service
+     * @param service Service of passivator
+     * @return Passivator if installed
+     */
+    public static Optional<IdleUIPassivator> get(VaadinService service) {
+        return Optional.ofNullable(service == null ? null : passivators.get(service));
+    }
+
+    /**
+     * Stops passivator of given service, and deletes passivated UIs. Called automatically when service is destroyed.
+     * @param service Service of passivator
+     */
+    public static void uninstall(VaadinService service) {
+        IdleUIPassivator passivator = passivators.remove(service);
+        if(passivator != null) {
+            passivator.sweeper.shutdownNow();
+            passivator.entries.clear();
+            passivator.store.close();
+        }
+    }
+
+    /**
+     * Start tracking given session. Sessions are tracked automatically when created or when their UIs make requests,
+     * this is only needed to passivate UIs of sessions restored otherwise (eg. deserialized) before their requests.
+     * @param session Session tracked
+     */
+    public void track(VaadinSession session) {
+        getEntry(session);
+    }
+
+    /**
+     * Get seconds without requests before UI is passivated
+     * @return Idle period in seconds
+     */
+    public int getIdleSeconds() {
+        return (int)(idleMillis / 1000L);
+    }
+
+    /**
+     * Get directory of passivated UIs
+     * @return Directory
+     */
+    public Path getDirectory() {
+        return store.getDirectory();
+    }
+
+    /**
+     * Amount of UIs currently passivated
+     * @return Amount of UIs
+     */
+    public int getPassivatedCount() {
+        return entries.values().stream().mapToInt(entry -> entry.passivated.size()).sum();
+    }
+
+    /**
+     * Amount of bytes written for UIs currently passivated
+     * @return Bytes in store
+     */
+    public long getPassivatedBytes() {
+        return entries.values().stream().flatMap(entry -> entry.passivated.values().stream())
+                .mapToLong(passivated -> passivated.size).sum();
+    }
+
+    /**
+     * Check if UI of given session is passivated
+     * @param session Session of UI
+     * @param uiId Id of UI
+     * @return true if UI is passivated
+     */
+    public boolean isPassivated(VaadinSession session, int uiId) {
+        SessionEntry entry = entries.get(session);
+        return entry != null && entry.passivated.containsKey(uiId);
+    }
+
+    /**
+     * Check if session has passivated UIs
+     * @param session Session checked
+     * @return true if any UI of session is passivated
+     */
+    boolean hasPassivated(VaadinSession session) {
+        SessionEntry entry = entries.get(session);
+        return entry != null && !entry.passivated.isEmpty();
+    }
+
+    /**
+     * Passivate given UI now, without waiting it to be idle. Session has to be locked.
+     * @param ui UI passivated
+     * @return true if UI was passivated, false if UI is closing, uses push, has changes not yet sent to client or
+     * could not be written
+     */
+    public boolean passivate(UI ui) {
+        return passivate(ui, Long.MAX_VALUE);
+    }
+
+    /**
+     * Passivate given UI, unless it has received requests after given time. Session has to be locked.
+     */
+    private boolean passivate(UI ui, long idleSince) {
+        VaadinSession session = ui.getSession();
+        if(session == null || ui.isClosing() || ui.getPushConfiguration().getPushMode().isEnabled()
+                || ui.getConnectorTracker().hasDirtyConnectors()) {
+            return false;
+        }
+
+        SessionEntry entry = getEntry(session);
+        int uiId = ui.getUIId();
+        long lastHeartbeat = ui.getLastHeartbeatTimestamp();
+
+        // Marked before last request is checked, and request is recorded before mark is checked, so either request
+        // is seen here, or request waits for session lock and restores UI
+        entry.passivating.add(uiId);
+        Map<Class<?>,CurrentInstance> old = CurrentInstance.setCurrent(ui);
+        try {
+            Long lastRequest = entry.lastRequests.get(uiId);
+            if(lastRequest != null && lastRequest > idleSince) {
+                return false;
+            }
+
+            // Detached first, so session is not referred by UI anymore
+            session.removeUI(ui);
+            try {
+                byte[] data = serialize(ui, session);
+                entry.passivated.put(uiId, new PassivatedUI(store.write(data), data.length, lastHeartbeat));
+                return true;
+            } catch(IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to passivate UI " + uiId + ", UI is kept in memory", e);
+                ui.setSession(session);
+                session.addUI(ui);
+                return false;
+            }
+        } finally {
+            CurrentInstance.restoreInstances(old);
+            entry.passivating.remove(uiId);
+        }
+    }
+
+    /**
+     * Restore passivated UI of given session. This is done automatically when request of UI is received. Session has
+     * to be locked.
+     * @param session Session of UI
+     * @param uiId Id of UI
+     * @return Restored UI, or null if UI was not passivated or could not be read
+     */
+    public UI restore(VaadinSession session, int uiId) {
+        SessionEntry entry = entries.get(session);
+        PassivatedUI passivated = entry == null ? null : entry.passivated.remove(uiId);
+        if(passivated == null) {
+            return null;
+        }
+
+        try {
+            UI ui = deserialize(store.read(passivated.file), session);
+            long now = System.currentTimeMillis();
+            ui.setLastHeartbeatTimestamp(Math.max(passivated.lastHeartbeat, now));
+
+            Map<Class<?>,CurrentInstance> old = CurrentInstance.setCurrent(session);
+            try {
+                UI.setCurrent(ui);
+                ui.setSession(session);
+                session.addUI(ui);
+            } finally {
+                CurrentInstance.restoreInstances(old);
+            }
+
+            entry.lastRequests.put(uiId, now);
+            entry.nextCheck = Math.min(entry.nextCheck, now + idleMillis);
+            return ui;
+        } catch(IOException | ClassNotFoundException e) {
+            LOGGER.log(Level.WARNING, "Failed to restore passivated UI " + uiId, e);
+            return null;
+        } finally {
+            store.delete(passivated.file);
+        }
+    }
+
+    /**
+     * Called when request of UI is received, before Vaadin handles it. Passivated UI is restored right away, so
+     * Vaadin finds it. Session must not be locked.
+     * @param session Session of UI
+     * @param uiId Id of UI
+     */
+    void requestReceived(VaadinSession session, int uiId) {
+        SessionEntry entry = getEntry(session);
+        entry.lastRequests.put(uiId, System.currentTimeMillis());
+        // UI being passivated is restored when passivation has released the lock
+        if(entry.passivated.containsKey(uiId) || entry.passivating.contains(uiId)) {
+            session.accessSynchronously(() -> restore(session, uiId));
+        }
+    }
+
+    /**
+     * Called when heartbeat of UI is received. Heartbeats of passivated UIs are recorded without restoring UI.
+     * @param session Session of UI
+     * @param uiId Id of UI
+     * @return true if UI is passivated and heartbeat was recorded
+     */
+    boolean heartbeatReceived(VaadinSession session, int uiId) {
+        SessionEntry entry = entries.get(session);
+        if(entry != null && entry.passivating.contains(uiId)) {
+            // Wait for passivation to finish, UI is then either passivated or still in session
+            session.accessSynchronously(() -> { });
+        }
+        PassivatedUI passivated = entry == null ? null : entry.passivated.get(uiId);
+        if(passivated == null) {
+            return false;
+        }
+        passivated.lastHeartbeat = System.currentTimeMillis();
+        return true;
+    }
+
+    private SessionEntry getEntry(VaadinSession session) {
+        return entries.computeIfAbsent(session, s -> new SessionEntry(s, System.currentTimeMillis() + idleMillis));
+    }
+
+    private void untrack(VaadinSession session) {
+        SessionEntry entry = entries.remove(session);
+        if(entry != null) {
+            entry.removed = true;
+            entry.passivated.values().forEach(passivated -> store.delete(passivated.file));
+            entry.passivated.clear();
+        }
+    }
+
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            long heartbeatTimeout = resolveHeartbeatTimeout();
+            for(SessionEntry entry : entries.values()) {
+                if(heartbeatTimeout > 0) {
+                    dropAbandoned(entry, now - heartbeatTimeout);
+                }
+                if(now >= entry.nextCheck && entry.checkQueued.compareAndSet(false, true)) {
+                    // Run right away if session is not locked, otherwise when lock is released
+                    entry.session.access(() -> {
+                        try {
+                            passivateIdle(entry);
+                        } finally {
+                            entry.checkQueued.set(false);
+                        }
+                    });
+                }
+            }
+        } catch(RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to passivate idle UIs", e);
+        }
+    }
+
+    private void dropAbandoned(SessionEntry entry, long limit) {
+        entry.passivated.entrySet().removeIf(passivated -> {
+            if(passivated.getValue().lastHeartbeat < limit) {
+                store.delete(passivated.getValue().file);
+                entry.lastRequests.remove(passivated.getKey());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void passivateIdle(SessionEntry entry) {
+        VaadinSession session = entry.session;
+        if(entry.removed || session.getState() != VaadinSession.State.OPEN) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long nextCheck = now + idleMillis;
+        for(UI ui : new ArrayList<>(session.getUIs())) {
+            // UIs are idle since they are first seen, if those have not made requests yet
+            long due = entry.lastRequests.computeIfAbsent(ui.getUIId(), id -> now) + idleMillis;
+            if(due > now) {
+                nextCheck = Math.min(nextCheck, due);
+            } else {
+                // Skipped if request has arrived since due time was resolved
+                passivate(ui, now - idleMillis);
+            }
+        }
+        entry.lastRequests.keySet().removeIf(id -> session.getUIById(id) == null && !entry.passivated.containsKey(id));
+        entry.nextCheck = nextCheck;
+    }
+
+    /**
+     * Resolve time without heartbeats after which Vaadin closes UI, or 0 if heartbeats are disabled
+     */
+    private long resolveHeartbeatTimeout() {
+        int interval = service.getDeploymentConfiguration().getHeartbeatInterval();
+        // Same three missed heartbeats as Vaadin permits
+        return interval > 0 ? (long)(interval * 3.1 * 1000) : 0L;
+    }
+
+    private static byte[] serialize(UI ui, VaadinSession session) throws IOException {
+        IdleSessionController controller = IdleSessionController.find(session);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new UIOutputStream(bytes, session, controller)) {
+            out.writeObject(ui);
+        }
+        return bytes.toByteArray();
+    }
+
+    private UI deserialize(byte[] data, VaadinSession session) throws IOException, ClassNotFoundException {
+        try(ObjectInputStream in = new UIInputStream(new ByteArrayInputStream(data), session,
+                service.getClassLoader())) {
+            return (UI)in.readObject();
+        }
+    }
+
+    private static class UIOutputStream extends ObjectOutputStream {
+        private final VaadinSession session;
+        private final IdleSessionController controller;
+
+        private UIOutputStream(OutputStream out, VaadinSession session, IdleSessionController controller)
+                throws IOException {
+            super(out);
+            this.session = session;
+            this.controller = controller;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if(obj == session) {
+                return SessionReference.SESSION;
+            } else if(obj != null && obj == controller) {
+                return SessionReference.CONTROLLER;
+            }
+            return obj;
+        }
+    }
+
+    private static class UIInputStream extends ObjectInputStream {
+        private final VaadinSession session;
+        private final ClassLoader classLoader;
+
+        private UIInputStream(InputStream in, VaadinSession session, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.session = session;
+            this.classLoader = classLoader;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if(classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch(ClassNotFoundException e) {
+                    // Primitive types and classes of other loaders
+                }
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            if(obj == SessionReference.SESSION) {
+                return session;
+            } else if(obj == SessionReference.CONTROLLER) {
+                return IdleSessionController.get(session);
+            }
+            return obj;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.vaadin.alump.idlealarm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local file store of passivated UIs. Each UI is stored to its own file with file channel. Whole file is written and
+ * read with one buffer, so data is not copied by stream buffers on the way.
+ */
+class IdleUIStore {
+
+    private final static Logger LOGGER = Logger.getLogger(IdleUIStore.class.getName());
+
+    private static final String PREFIX = "ui-";
+    private static final String SUFFIX = ".ser";
+
+    private final Path directory;
+    private final boolean temporary;
+
+    /**
+     * Create store to given directory. Directory is created if missing.
+     * @param directory Directory of files
+     * @param temporary If true, directory is removed when store is closed
+     * @throws IOException If directory can not be created
+     */
+    IdleUIStore(Path directory, boolean temporary) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.temporary = temporary;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Write data to new file
+     * @param data Data written
+     * @return File written
+     * @throws IOException If writing failed
+     */
+    Path write(byte[] data) throws IOException {
+        Path file = Files.createTempFile(directory, PREFIX, SUFFIX);
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch(IOException e) {
+            delete(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Read whole file
+     * @param file File read
+     * @return Data of file
+     * @throws IOException If reading failed
+     */
+    byte[] read(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE) {
+                throw new IOException("Too large file " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer) < 0) {
+                    throw new EOFException("File " + file + " was truncated");
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * Delete file, failures are only logged
+     * @param file File deleted
+     */
+    void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch(IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete passivated UI " + file, e);
+        }
+    }
+
+    /**
+     * Delete files of store, and temporary directory
+     */
+    void close() {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            files.forEach(this::delete);
+        } catch(IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to list passivated UIs in " + directory, e);
+        }
+        if(temporary) {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.vaadin.alump.idlealarm.client;
+
+/**
+ * Clock based on performance.now() of browser. Time is monotonic with sub-millisecond precision, so changes of
+ * wall clock (eg. by NTP or user) do not move deadlines.
+ * <p>
+ * Some browsers do not advance performance.now() while computer is suspended or page is frozen. Page is hidden,
+ * frozen or loses focus before that happens, so only if page has been interrupted since previous call, and wall clock
+ * has advanced more than monotonic time, difference is added to clock as suspended time. Wall clock changes while
+ * page is visible and focused, and wall clock moved backwards, are ignored. Wall clock moved forward while page is in
+ * background can not be told apart from suspend, and is added too.
+ */
+public class BrowserIdleClock implements IdleClock {
+
+    // Smaller differences between clocks are expected drift, and are not treated as suspend
+    private static final double SUSPEND_THRESHOLD_MS = 1000.0;
+
+    private static BrowserIdleClock instance;
+
+    private double lastMonotonic;
+    private double lastWall;
+    private double suspended = 0.0;
+    // Page has been hidden, frozen or unfocused since previous call, so monotonic time may have stalled
+    private boolean interrupted;
+
+    protected BrowserIdleClock() {
+        lastMonotonic = monotonicNow();
+        lastWall = wallNow();
+        interrupted = !isPageActive();
+        addInterruptHandlers();
+    }
+
+    /**
+     * Get clock of this page
+     * @return Clock instance
+     */
+    public static BrowserIdleClock get() {
+        if(instance == null) {
+            instance = new BrowserIdleClock();
+        }
+        return instance;
+    }
+
+    @Override
+    public double now() {
+        double monotonic = monotonicNow();
+        double wall = wallNow();
+        double lost = (wall - lastWall) - (monotonic - lastMonotonic);
+        if(interrupted && lost > SUSPEND_THRESHOLD_MS) {
+            suspended += lost;
+        }
+        lastMonotonic = monotonic;
+        lastWall = wall;
+        // Page in background may still be suspended before next call
+        interrupted = !isPageActive();
+        return monotonic + suspended;
+    }
+
+    /**
+     * Convert time of this clock to milliseconds since epoch, eg. to share it with other pages
+     * @param time Time of this clock
+     * @return Milliseconds since epoch
+     */
+    public double toEpochMillis(double time) {
+        double now = now();
+        return lastWall - (now - time);
+    }
+
+    /**
+     * Convert milliseconds since epoch to time of this clock
+     * @param epochMillis Milliseconds since epoch
+     * @return Time of this clock
+     */
+    public double fromEpochMillis(double epochMillis) {
+        double now = now();
+        return now - (lastWall - epochMillis);
+    }
+
+    private void onInterrupt() {
+        interrupted = true;
+    }
+
+    private native void addInterruptHandlers()
+    /*-{
+        var self = this;
+        var handler = $entry(function() {
+            self.@org.vaadin.alump.idlealarm.client.BrowserIdleClock::onInterrupt()();
+        });
+        // Clock lives as long as the page, so handlers are never removed
+        $doc.addEventListener('visibilitychange', function() {
+            if($doc.hidden) {
+                handler();
+            }
+        });
+        $doc.addEventListener('freeze', handler);
+        $wnd.addEventListener('pagehide', handler);
+        $wnd.addEventListener('blur', handler);
+    }-*/;
+
+    private static native boolean isPageActive()
+    /*-{
+        return !$doc.hidden && (!$doc.hasFocus || $doc.hasFocus());
+    }-*/;
+
+    private static native double monotonicNow()
+    /*-{
+        var performance = $wnd.performance;
+        return performance && performance.now ? performance.now() : Date.now();
+    }-*/;
+
+    private static native double wallNow()
+    /*-{
+        return Date.now();
+    }-*/;
+}
@@ -0,0 +1,108 @@
+package org.vaadin.alump.idlealarm.client;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * Tracks user input (pointer, key, scroll and focus events) on the whole page. Events are coalesced in native
+ * handler, so listener is called at most once per given period, however often events are fired.
+ */
+public class IdleActivityTracker {
+
+    private static final String[] EVENT_TYPES = new String[] {
+            "pointerdown", "mousedown", "touchstart", "keydown", "wheel", "scroll", "focusin" };
+
+    public interface ActivityListener {
+        /**
+         * Called when user has been active. Called at most once per coalescing period.
+         */
+        void onUserActivity();
+    }
+
+    private final ActivityListener listener;
+    private final int coalesceMs;
+    private double lastActivity = Double.NEGATIVE_INFINITY;
+    private JavaScriptObject handler = null;
+
+    /**
+     * Create new tracker, tracking is started with {@link #start()}
+     * @param listener Listener called when user is active
+     * @param coalesceMs Minimum amount of milliseconds between listener calls
+     */
+    public IdleActivityTracker(ActivityListener listener, int coalesceMs) {
+        this.listener = listener;
+        this.coalesceMs = coalesceMs;
+    }
+
+    public void start() {
+        if(handler == null) {
+            handler = createHandler();
+            for(String type : EVENT_TYPES) {
+                addListener(type, handler);
+            }
+        }
+    }
+
+    public void stop() {
+        if(handler != null) {
+            for(String type : EVENT_TYPES) {
+                removeListener(type, handler);
+            }
+            handler = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return handler != null;
+    }
+
+    /**
+     * Check if user has been active after given time. Activity is tracked with precision of coalescing period.
+     * @param timestampMs Time in milliseconds, as given by {@link BrowserIdleClock}
+     * @return true if user has been active after given time
+     */
+    public boolean hasActivitySince(double timestampMs) {
+        return lastActivity >= timestampMs;
+    }
+
+    /**
+     * Record activity that happened outside of this page (eg. in other browser tab)
+     * @param timestampMs Time of activity in milliseconds, as given by {@link BrowserIdleClock}
+     */
+    public void recordActivity(double timestampMs) {
+        lastActivity = Math.max(lastActivity, timestampMs);
+    }
+
+    private void onEvent() {
+        lastActivity = BrowserIdleClock.get().now();
+        listener.onUserActivity();
+    }
+
+    private native JavaScriptObject createHandler()
+    /*-{
+        var self = this;
+        var period = this.@org.vaadin.alump.idlealarm.client.IdleActivityTracker::coalesceMs;
+        var notify = $entry(function() {
+            self.@org.vaadin.alump.idlealarm.client.IdleActivityTracker::onEvent()();
+        });
+        var last = -Infinity;
+        return function() {
+            // Cheap check here, as scroll and wheel events are fired at high rates. Monotonic time, so that wall
+            // clock moved backwards does not stop notifications.
+            var now = $wnd.performance && $wnd.performance.now ? $wnd.performance.now() : Date.now();
+            if(now - last >= period) {
+                last = now;
+                notify();
+            }
+        };
+    }-*/;
+
+    private static native void addListener(String type, JavaScriptObject handler)
+    /*-{
+        $doc.addEventListener(type, handler, { capture: true, passive: true });
+    }-*/;
+
+    private static native void removeListener(String type, JavaScriptObject handler)
+    /*-{
+        $doc.removeEventListener(type, handler, { capture: true, passive: true });
+    }-*/;
+}
@@ -1,20 +1,23 @@
 package org.vaadin.alump.idlealarm.client;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
-import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.RunAsyncCallback;
 import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.Window;
-import com.google.gwt.user.client.ui.*;
-import com.vaadin.client.MouseEventDetailsBuilder;
 import com.vaadin.client.ServerConnector;
+import com.vaadin.client.communication.JsonDecoder;
 import com.vaadin.client.communication.StateChangeEvent;
 import com.vaadin.client.extensions.AbstractExtensionConnector;
-import com.vaadin.client.ui.VButton;
-import com.vaadin.client.ui.VOverlay;
+import com.vaadin.client.metadata.Type;
 import com.vaadin.shared.MouseEventDetails;
 import com.vaadin.shared.ui.Connect;
+import elemental.json.Json;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
 import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
 import org.vaadin.alump.idlealarm.client.shared.IdleAlarmServerRpc;
 import org.vaadin.alump.idlealarm.client.shared.TimeoutAction;
@@ -24,21 +27,57 @@ import org.vaadin.alump.idlealarm.client.shared.TimeoutAction;
  */
 @Connect(org.vaadin.alump.idlealarm.IdleAlarm.class)
 public class IdleAlarmConnector extends AbstractExtensionConnector
-        implements IdleTimeoutClientUtil.IdleTimeoutListener {
+        implements IdleTimeoutClientUtil.IdleTimeoutListener, IdleActivityTracker.ActivityListener,
+        IdleTabCoordinator.TabListener {
 
     private final static Logger LOGGER = Logger.getLogger(IdleAlarmConnector.class.getName());
 
+    /**
+     * Loading of overlay is retried after this many milliseconds, while warning is due
+     */
+    private static final int OVERLAY_RETRY_MILLIS = 5000;
+
     protected IdleTimeoutClientUtil timeoutUtil = null;
 
-    private VOverlay overlay;
-    private HTML overlayLabel;
-    private Timer actionTimer;
+    private IdleAlarmPolicy policy;
+
+    // Created when code of overlay has been loaded
+    private IdleAlarmOverlay overlay;
+    private boolean overlayLoading = false;
+    // Warning reached before code of overlay was loaded
+    private IdleTimeoutClientUtil.IdleTimeoutUpdateEvent pendingWarning;
+    private IdleActivityTracker activityTracker;
+    private IdleTabCoordinator tabCoordinator;
+
+    private double syncedServerTime = 0;
+
+    private boolean profileApplied = false;
+    private boolean profileLoading = false;
+    private String unavailableProfile;
+    // State changes received while profile was loaded, those override values of profile
+    private List<StateChangeEvent> pendingChanges;
 
     @Override
     public IdleAlarmState getState() {
         return (IdleAlarmState)super.getState();
     }
 
+    @Override
+    protected void init() {
+        super.init();
+
+        // Events of session expired in earlier page of this tab, sent with first request of this page
+        IdleTimeoutReport report = IdleTimeoutReport.take();
+        if(report != null) {
+            if(report.isWarningShown()) {
+                getRpcProxy(IdleAlarmServerRpc.class).warningShown();
+            }
+            if(report.getAction() != null) {
+                getRpcProxy(IdleAlarmServerRpc.class).timeoutActionPerformed(report.getAction());
+            }
+        }
+    }
+
     @Override
     protected void extend(ServerConnector target) {
         //ignore
@@ -48,18 +87,143 @@ public class IdleAlarmConnector extends AbstractExtensionConnector
     public void onStateChanged(StateChangeEvent event) {
         super.onStateChanged(event);
 
+        if(!profileApplied && getState().profile != null) {
+            // State is handled first time when values of profile have been applied
+            loadProfile(event);
+            return;
+        }
+
         if(this.getConnection() == null) {
             LOGGER.severe("No connection!");
         } else if(!getTimeoutUtil().isRunning()) {
-            getTimeoutUtil().start(getState().maxInactiveInterval, getState().secondsBefore);
+            getTimeoutUtil().start(getState().maxInactiveInterval, getPolicy().getCheckpoints(),
+                    getPolicy().getCallEverySecondWhenSecondsLeft());
             resetTimeout();
+        } else if(event.hasPropertyChanged("maxInactiveInterval") || event.hasPropertyChanged("secondsBefore")
+                || event.hasPropertyChanged("countdownTimeout") || event.hasPropertyChanged("activityKeepAlive")
+                || event.hasPropertyChanged("activityKeepAliveThreshold")) {
+            // Timer is re-armed in place, time of last reset is kept
+            getTimeoutUtil().reconfigure(getState().maxInactiveInterval, getPolicy().getCheckpoints(),
+                    getPolicy().getCallEverySecondWhenSecondsLeft());
+        }
+
+        if(getTimeoutUtil().isRunning()) {
+            getTimeoutUtil().setWorkerTimer(getState().workerTimer);
+        }
+
+        if(getState().serverTime != syncedServerTime && getState().serverLastAccess > 0
+                && getTimeoutUtil().isRunning()) {
+            syncedServerTime = getState().serverTime;
+            getTimeoutUtil().synchronize(getState().serverLastAccess, getState().serverTime);
+        }
+
+        if(getState().activityKeepAlive && activityTracker == null) {
+            activityTracker = new IdleActivityTracker(this, 1000);
+            activityTracker.start();
+        } else if(!getState().activityKeepAlive && activityTracker != null) {
+            activityTracker.stop();
+            activityTracker = null;
+        }
+
+        if(getTimeoutUtil().isRunning()) {
+            // Interval may be shorter than time before prefetch checkpoint
+            prefetchOverlay(getTimeoutUtil().secondsToIdleTimeout());
+        }
+
+        if(overlay != null) {
+            // Built when browser is idle, so showing warning later only attaches the overlay
+            IdleDeadlineScheduler.get().scheduleIdle(() -> {
+                if(overlay != null) {
+                    overlay.update(getState());
+                }
+            });
+        }
+
+        if(getState().crossTabSync && getState().crossTabKey != null && tabCoordinator == null) {
+            tabCoordinator = new IdleTabCoordinator(getState().crossTabKey, this);
+            getTimeoutUtil().setResetListener(time -> tabCoordinator.publishReset(time));
+        } else if(!getState().crossTabSync && tabCoordinator != null) {
+            stopTabCoordinator();
         }
     }
 
+    private void loadProfile(StateChangeEvent event) {
+        if(pendingChanges == null) {
+            pendingChanges = new ArrayList<>();
+        }
+        if(!event.isInitialStateChange()) {
+            pendingChanges.add(event);
+        }
+        String key = getState().profile;
+        if(profileLoading || key.equals(unavailableProfile)) {
+            return;
+        }
+
+        profileLoading = true;
+        IdleProfileLoader.load(getConnection(), key, profile -> {
+            profileLoading = false;
+            if(pendingChanges == null) {
+                // Connector was unregistered
+                return;
+            } else if(profile == null) {
+                // Server sends all values in state, those are handled when received
+                unavailableProfile = key;
+                getRpcProxy(IdleAlarmServerRpc.class).profileUnavailable();
+                return;
+            } else if(!key.equals(getState().profile)) {
+                if(getState().profile != null) {
+                    loadProfile(new StateChangeEvent(this, Json.createObject(), true));
+                }
+                return;
+            }
+
+            applyProfile(profile);
+            profileApplied = true;
+            pendingChanges = null;
+            fireEvent(new StateChangeEvent(this, Json.createObject(), true));
+        });
+    }
+
+    /**
+     * Apply values of profile to state, except values that differ from profile
+     */
+    private void applyProfile(JsonObject profile) {
+        JsonObject values = Json.createObject();
+        for(String name : profile.keys()) {
+            if(!isOverridden(name)) {
+                values.put(name, profile.<JsonValue>get(name));
+            }
+        }
+        JsonDecoder.decodeValue(new Type(getState().getClass().getName(), null), values, getState(),
+                getConnection());
+    }
+
+    private boolean isOverridden(String name) {
+        if(getState().profileOverrides != null && getState().profileOverrides.contains(name)) {
+            return true;
+        }
+        for(StateChangeEvent change : pendingChanges) {
+            if(change.hasPropertyChanged(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void onUnregister() {
-        if(actionTimer != null) {
-            actionTimer.cancel();
+        pendingChanges = null;
+        pendingWarning = null;
+        if(overlay != null) {
+            overlay.destroy();
+            overlay = null;
+        }
+        if(activityTracker != null) {
+            activityTracker.stop();
+            activityTracker = null;
+        }
+        if(tabCoordinator != null) {
+            stopTabCoordinator();
         }
         if(timeoutUtil != null) {
             timeoutUtil.stop();
@@ -70,159 +234,245 @@ public class IdleAlarmConnector extends AbstractExtensionConnector
 
     @Override
     public void onIdleTimeoutUpdate(IdleTimeoutClientUtil.IdleTimeoutUpdateEvent event) {
-        if (event.getSecondsToTimeout() <= getState().secondsBefore && event.getSecondsToTimeout() > 0) {
-            boolean hasRedirectUrl = getState().timeoutRedirectURL != null && !getState().timeoutRedirectURL.isEmpty();
+        if(activityTracker != null && isLeaderTab() && getPolicy().isActivityCheckTime(event.getSecondsToTimeout())) {
+            // Activity before threshold was reached did not extend session, so check it now
+            if(activityTracker.hasActivitySince(getTimeoutUtil().getDeadline().getLastReset())) {
+                activityKeepAlive();
+            }
+        }
 
-            if(overlay == null) {
-                FlowPanel overlayContent = new FlowPanel();
+        prefetchOverlay(event.getSecondsToTimeout());
 
-                overlay = new VOverlay();
-                overlay.add(overlayContent);
-                overlay.setAutoHideEnabled(true);
-                overlay.addStyleName("idle-alarm-popup");
+        if (getPolicy().isWarningTime(event.getSecondsToTimeout())) {
+            if(overlay == null) {
+                // Shown when code of overlay has been loaded
+                pendingWarning = event;
+                loadOverlay();
+            } else if(overlay.show(getState(), event)) {
+                getRpcProxy(IdleAlarmServerRpc.class).warningShown();
+                // Navigation at timeout is then served from cache
+                IdlePrefetchUtil.prefetchRedirectTargets(getState());
+            }
 
-                if(!getState().closeEnabled && getState().buttons.size() == 0) {
-                    overlay.addStyleName("no-buttons");
+        } else if(event.getSecondsToTimeout() <= 0 && (isOverlayShowing() || pendingWarning != null)) {
+            // Performed also when code of overlay could not be loaded (eg. after redeploy), refresh is then needed most
+            if(getState().timeoutAction != TimeoutAction.REDIRECT) {
+                if(tabCoordinator != null) {
+                    tabCoordinator.publishTimeout();
                 }
+                performTimeoutAction();
+            }
+        } else {
+            pendingWarning = null;
+            if(isOverlayShowing()) {
+                closeOverlay();
+            }
+        }
+    }
 
-                getState().styleNames.forEach(stylename -> overlay.addStyleName(stylename));
+    /**
+     * Load code of overlay when browser is idle, if warning will be shown soon
+     * @param secondsToTimeout Seconds left to idle timeout
+     */
+    private void prefetchOverlay(int secondsToTimeout) {
+        if(overlay == null && !overlayLoading && getPolicy().isOverlayPrefetchTime(secondsToTimeout)) {
+            IdleDeadlineScheduler.get().scheduleIdle(this::loadOverlay);
+        }
+    }
 
-                overlayLabel = new HTML();
-                overlayLabel.addStyleName("idle-alarm-message");
-                overlayContent.add(overlayLabel);
+    /**
+     * Load code of overlay. Overlay is in its own split point, as most pages never show the warning.
+     */
+    private void loadOverlay() {
+        if(overlay != null || overlayLoading) {
+            return;
+        }
 
-                if (getState().closeEnabled) {
-                    overlayContent.add(createCloseButton());
-                    overlay.addStyleName("with-close");
+        overlayLoading = true;
+        GWT.runAsync(IdleAlarmOverlay.class, new RunAsyncCallback() {
+            @Override
+            public void onFailure(Throwable reason) {
+                overlayLoading = false;
+                LOGGER.warning("Failed to load IdleAlarm overlay: " + reason.getMessage());
+                if(pendingWarning != null) {
+                    // Timeout action does not depend on overlay, warning is shown if loading succeeds before it
+                    new Timer() {
+                        @Override
+                        public void run() {
+                            if(pendingWarning != null && timeoutUtil != null) {
+                                loadOverlay();
+                            }
+                        }
+                    }.schedule(OVERLAY_RETRY_MILLIS);
                 }
+            }
 
-                int buttonIndex = 0;
-                for (Integer id : getState().buttons.keySet()) {
-                    ++buttonIndex;
-                    IdleAlarmState.ButtonState buttonState = getState().buttons.get(id);
-                    overlayContent.add(createButton(id, buttonIndex, buttonState.caption, buttonState.styleNames));
+            @Override
+            public void onSuccess() {
+                overlayLoading = false;
+                if(timeoutUtil == null) {
+                    // Connector was unregistered
+                    return;
                 }
 
-                // Use UI as owner
-                overlay.setOwner(getConnection().getUIConnector().getWidget());
-                overlay.addCloseHandler(e -> {
-                    if(e.isAutoClosed()) {
-                        resetTimeout();
+                overlay = new IdleAlarmOverlay(new IdleAlarmOverlay.OverlayListener() {
+                    @Override
+                    public void buttonClicked(int id, MouseEventDetails details) {
+                        getRpcProxy(IdleAlarmServerRpc.class).buttonClicked(id, details);
+                    }
+
+                    @Override
+                    public void dismissed() {
+                        IdleAlarmConnector.this.dismissed();
                     }
-                });
+                }, getConnection().getUIConnector().getWidget());
+
+                IdleTimeoutClientUtil.IdleTimeoutUpdateEvent warning = pendingWarning;
+                pendingWarning = null;
+                if(warning != null) {
+                    onIdleTimeoutUpdate(warning);
+                } else {
+                    overlay.update(getState());
+                }
             }
+        });
+    }
 
-            String message = IdleAlarmMessageUtil.format(getState().message, event);
-            IdleAlarmMessageUtil.setMessageToHtml(message, getState().contentMode, overlayLabel);
+    private void closeOverlay() {
+        if(overlay != null) {
+            overlay.close();
+        }
+    }
 
-            if(!overlay.isShowing()) {
-                overlay.setPopupPositionAndShow((offsetWidth, offsetHeight) -> {
-                    int windowWidth = Window.getClientWidth();
-                    overlay.setPopupPosition((windowWidth - offsetWidth) / 2, 0);
-                });
-            }
+    private boolean isOverlayShowing() {
+        return overlay != null && overlay.isShowing();
+    }
 
-            if (getState().countdownTimeout) {
-                scheduleLiveSecondsToTimeoutUpdater(event);
-            }
-            if (getState().timeoutAction != TimeoutAction.REDIRECT) {
-                scheduleTimeoutAction(event.getSecondsToTimeout()*1000);
-            }
+    protected IdleAlarmPolicy getPolicy() {
+        if(policy == null) {
+            policy = new IdleAlarmPolicy(getState());
+        }
+        return policy;
+    }
 
-        } else if(overlay != null) {
-            closeOverlay();
+    protected IdleTimeoutClientUtil getTimeoutUtil() {
+        if(timeoutUtil == null) {
+            timeoutUtil = new IdleTimeoutClientUtil(this, this);
         }
+        return timeoutUtil;
     }
 
-    private Widget createCloseButton() {
-        VButton closeButton = new VButton();
-        if(getState().closeCaption != null) {
-            closeButton.setText(getState().closeCaption);
-        } else {
-            closeButton.setHtml("&#10005;");
+    protected void resetTimeout() {
+        if(getState().lightweightKeepAlive) {
+            double sent = BrowserIdleClock.get().now();
+            if(IdleKeepAliveUtil.sendKeepAlive(IdleKeepAliveUtil.getKeepAliveUrl(getConnection()),
+                    getConnection().getMessageHandler().getCsrfToken(),
+                    extended -> onKeepAliveResponse(sent, extended))) {
+                return;
+            }
         }
-        closeButton.addStyleName("close-button");
-        closeButton.addClickHandler(e -> {
-            closeOverlay();
-            resetTimeout();
-        });
-        return closeButton;
+        getRpcProxy(IdleAlarmServerRpc.class).resetIdleTimeout();
     }
 
-    private Widget createButton(final int id, int index, String caption, Collection<String> styleNames) {
-        VButton redirectButton = new VButton();
-        if(caption != null) {
-            redirectButton.setText(caption);
+    private void onKeepAliveResponse(double sent, boolean extended) {
+        if(timeoutUtil == null) {
+            // Unregistered while request was pending
+            return;
+        } else if(extended) {
+            // Session was accessed after request was sent
+            timeoutUtil.reset(sent);
+        } else {
+            // Filter not mapped, token rejected or session gone, server RPC extends session or reports expiration
+            getRpcProxy(IdleAlarmServerRpc.class).resetIdleTimeout();
         }
-        redirectButton.addStyleName("button-" + index);
-        styleNames.forEach(styleName -> redirectButton.addStyleName(styleName));
-        redirectButton.addClickHandler(e -> {
-            MouseEventDetails details = MouseEventDetailsBuilder.buildMouseEventDetails(e.getNativeEvent());
-            getRpcProxy(IdleAlarmServerRpc.class).buttonClicked(id, details);
-        });
-        return redirectButton;
     }
 
-    private void scheduleLiveSecondsToTimeoutUpdater(IdleTimeoutClientUtil.IdleTimeoutUpdateEvent event) {
-        Scheduler.get().scheduleFixedPeriod(() -> {
-            if(timeoutUtil ==  null) {
-                return false;
-            }
-            int secondsToTimeout = timeoutUtil.secondsToIdleTimeout(IdleTimeoutClientUtil.getUnixTimeStamp());
-            if (secondsToTimeout >= 0 && isOverlayShowing()) {
-                String msg = IdleAlarmMessageUtil.format(getState().message, secondsToTimeout,
-                        event.getSecondsSinceReset(), event.getMaxInactiveInterval());
-                IdleAlarmMessageUtil.setMessageToHtml(msg, getState().contentMode, overlayLabel);
-                return true;
-            }
-            return false;
-        }, 1000);
+    @Override
+    public void onUserActivity() {
+        if(!isLeaderTab()) {
+            // Leader tab decides if session is extended
+            tabCoordinator.publishActivity(BrowserIdleClock.get().now());
+        } else if(timeoutUtil != null && timeoutUtil.isRunning()
+                && getPolicy().isActivityKeepAliveTime(timeoutUtil.secondsToIdleTimeout())) {
+            activityKeepAlive();
+        }
     }
 
-    private void scheduleTimeoutAction(int timeoutMs) {
-        actionTimer = new Timer() {
-            @Override
-            public void run() {
-                performTimeoutAction();
-            }};
-        actionTimer.schedule(timeoutMs);
+    @Override
+    public void onRemoteReset(double time) {
+        if(timeoutUtil != null) {
+            timeoutUtil.resetTo(time);
+        }
     }
 
-    private void closeOverlay() {
-        if(overlay != null) {
-            // Hide non-autoclosed to prevent timeout reset
-            overlay.hide(false);
-            overlay.removeFromParent();
-            overlay = null;
+    @Override
+    public void onRemoteActivity(double time) {
+        if(activityTracker != null) {
+            activityTracker.recordActivity(time);
+            onUserActivity();
         }
-        if (actionTimer !=null) {
-            actionTimer.cancel();
+    }
+
+    @Override
+    public void onKeepAliveRequested() {
+        dismissed();
+    }
+
+    @Override
+    public void onRemoteTimeout() {
+        // Deadlines of tabs are shared, so only timers throttled in background tabs are behind
+        if(timeoutUtil != null && timeoutUtil.isRunning()
+                && timeoutUtil.secondsToIdleTimeout() <= 1) {
+            performTimeoutAction();
         }
     }
 
-    protected IdleTimeoutClientUtil getTimeoutUtil() {
-        if(timeoutUtil == null) {
-            timeoutUtil = new IdleTimeoutClientUtil(this, this);
+    private boolean isLeaderTab() {
+        return tabCoordinator == null || tabCoordinator.isLeader();
+    }
+
+    private void stopTabCoordinator() {
+        tabCoordinator.stop();
+        tabCoordinator = null;
+        if(timeoutUtil != null) {
+            timeoutUtil.setResetListener(null);
         }
-        return timeoutUtil;
     }
 
-    protected void resetTimeout() {
-        getRpcProxy(IdleAlarmServerRpc.class).resetIdleTimeout();
+    private void dismissed() {
+        if(!isLeaderTab()) {
+            tabCoordinator.requestKeepAlive();
+        } else if(activityTracker != null) {
+            // Input that dismissed warning has already been handled as activity
+            activityKeepAlive();
+        } else {
+            resetTimeout();
+        }
     }
 
-    private boolean isOverlayShowing() {
-        return overlay != null && overlay.isShowing();
+    /**
+     * Extend session because of user activity, at most once per keep-alive window
+     */
+    private void activityKeepAlive() {
+        if(getPolicy().acquireActivityKeepAlive(BrowserIdleClock.get().now())) {
+            resetTimeout();
+        }
     }
 
     private void performTimeoutAction() {
+        // Overlay loaded later is not shown anymore
+        pendingWarning = null;
+        // Delayed report of warning was not sent, as there have been no requests since it was shown
+        boolean warningShown = isOverlayShowing();
         closeOverlay();
 
         if(getState().timeoutAction == TimeoutAction.DEFAULT) {
+            IdleTimeoutReport.store(warningShown, null);
             return;
         }
 
         final TimeoutAction action = getState().timeoutAction;
+        IdleTimeoutReport.store(warningShown, action);
         final String url = getState().timeoutRedirectURL;
 
         if(action == TimeoutAction.REDIRECT) {
@@ -4,7 +4,6 @@ import com.google.gwt.dom.client.Document;
 import com.google.gwt.dom.client.PreElement;
 import com.google.gwt.user.client.ui.HTML;
 import com.vaadin.shared.ui.ContentMode;
-import org.vaadin.alump.idlealarm.client.shared.IdleAlarmFormatting;
 
 /**
  * Created by alump on 15/07/15.
@@ -16,11 +15,8 @@ public class IdleAlarmMessageUtil {
     }
 
     public static String format(String formatting, int secondsToTimeout, int secondsSinceReset, int maxInactiveInterval) {
-        String message = formatting;
-        message = message.replaceAll(IdleAlarmFormatting.SECS_TO_TIMEOUT, "" + secondsToTimeout);
-        message = message.replaceAll(IdleAlarmFormatting.SECS_SINCE_RESET, "" + secondsSinceReset);
-        message = message.replaceAll(IdleAlarmFormatting.SECS_MAX_IDLE_TIMEOUT, "" + maxInactiveInterval);
-        return message;
+        return IdleMessageTemplate.compile(formatting, ContentMode.TEXT).format(secondsToTimeout, secondsSinceReset,
+                maxInactiveInterval);
     }
 
     public static void setMessageToHtml(String message, ContentMode contentMode, HTML widget) {
@@ -0,0 +1,212 @@
+package org.vaadin.alump.idlealarm.client;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.user.client.Window;
+import com.google.gwt.user.client.ui.FlowPanel;
+import com.google.gwt.user.client.ui.HTML;
+import com.google.gwt.user.client.ui.Widget;
+import com.vaadin.client.MouseEventDetailsBuilder;
+import com.vaadin.client.ui.VButton;
+import com.vaadin.client.ui.VOverlay;
+import com.vaadin.shared.MouseEventDetails;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+
+/**
+ * Warning notification of IdleAlarm. Only created in split point of IdleAlarmConnector, so code rendering the warning
+ * is downloaded when warning is about to be shown, not with the initial widgetset.
+ */
+public class IdleAlarmOverlay {
+
+    public interface OverlayListener {
+        /**
+         * Called when application specific button was clicked
+         * @param id ID of button
+         * @param details Details of click
+         */
+        void buttonClicked(int id, MouseEventDetails details);
+
+        /**
+         * Called when user closed the warning
+         */
+        void dismissed();
+    }
+
+    private final OverlayListener listener;
+    private final Widget owner;
+
+    private VOverlay overlay;
+    private HTML overlayLabel;
+    private IdleMessageTemplate messageTemplate;
+    private List<String> builtStyleNames;
+    private Map<Integer,IdleAlarmState.ButtonState> builtButtons;
+    private boolean builtCloseEnabled;
+    private String builtCloseCaption;
+
+    /**
+     * Create overlay
+     * @param listener Listener of user actions
+     * @param owner Owner widget of overlay
+     */
+    public IdleAlarmOverlay(OverlayListener listener, Widget owner) {
+        this.listener = listener;
+        this.owner = owner;
+    }
+
+    /**
+     * Build overlay if it's missing or state defining its content has changed
+     * @param state State of IdleAlarm
+     */
+    public void update(IdleAlarmState state) {
+        if(overlay != null && !isOutdated(state)) {
+            return;
+        }
+
+        boolean showing = isShowing();
+        destroy();
+
+        FlowPanel overlayContent = new FlowPanel();
+
+        overlay = new VOverlay();
+        overlay.add(overlayContent);
+        overlay.setAutoHideEnabled(true);
+        overlay.addStyleName("idle-alarm-popup");
+
+        if(!state.closeEnabled && state.buttons.size() == 0) {
+            overlay.addStyleName("no-buttons");
+        }
+
+        state.styleNames.forEach(stylename -> overlay.addStyleName(stylename));
+
+        overlayLabel = new HTML();
+        overlayLabel.addStyleName("idle-alarm-message");
+        overlayContent.add(overlayLabel);
+
+        if (state.closeEnabled) {
+            overlayContent.add(createCloseButton(state.closeCaption));
+            overlay.addStyleName("with-close");
+        }
+
+        int buttonIndex = 0;
+        for (Integer id : state.buttons.keySet()) {
+            ++buttonIndex;
+            IdleAlarmState.ButtonState buttonState = state.buttons.get(id);
+            overlayContent.add(createButton(id, buttonIndex, buttonState.caption, buttonState.styleNames));
+        }
+
+        overlay.setOwner(owner);
+        overlay.addCloseHandler(e -> {
+            if(e.isAutoClosed()) {
+                listener.dismissed();
+            }
+        });
+
+        builtStyleNames = state.styleNames;
+        builtButtons = state.buttons;
+        builtCloseEnabled = state.closeEnabled;
+        builtCloseCaption = state.closeCaption;
+
+        if(showing) {
+            showOverlay();
+        }
+    }
+
+    private boolean isOutdated(IdleAlarmState state) {
+        // State objects are replaced only when server sends new values
+        return builtStyleNames != state.styleNames || builtButtons != state.buttons
+                || builtCloseEnabled != state.closeEnabled || builtCloseCaption != state.closeCaption;
+    }
+
+    /**
+     * Show warning, or update its message if already shown
+     * @param state State of IdleAlarm
+     * @param event Update of idle timeout
+     * @return true if warning was not shown before
+     */
+    public boolean show(IdleAlarmState state, IdleTimeoutClientUtil.IdleTimeoutUpdateEvent event) {
+        update(state);
+
+        if(messageTemplate == null || !messageTemplate.isCompiledFrom(state.message, state.contentMode)) {
+            // Parsed only when message changes, later updates only change values in DOM
+            messageTemplate = IdleMessageTemplate.compile(state.message, state.contentMode);
+        }
+        if(!messageTemplate.isRenderedTo(overlayLabel.getElement())) {
+            messageTemplate.render(overlayLabel.getElement(), event.getSecondsToTimeout(),
+                    event.getSecondsSinceReset(), event.getMaxInactiveInterval());
+        } else {
+            messageTemplate.update(event.getSecondsToTimeout(), event.getSecondsSinceReset(),
+                    event.getMaxInactiveInterval());
+        }
+
+        if(!overlay.isShowing()) {
+            showOverlay();
+            return true;
+        }
+        return false;
+    }
+
+    private void showOverlay() {
+        overlay.setPopupPositionAndShow((offsetWidth, offsetHeight) -> {
+            int windowWidth = Window.getClientWidth();
+            overlay.setPopupPosition((windowWidth - offsetWidth) / 2, 0);
+        });
+    }
+
+    /**
+     * Close warning. Overlay is kept for next warning.
+     */
+    public void close() {
+        if(overlay != null) {
+            // Hide non-autoclosed to prevent timeout reset
+            overlay.hide(false);
+        }
+    }
+
+    public boolean isShowing() {
+        return overlay != null && overlay.isShowing();
+    }
+
+    /**
+     * Remove overlay from DOM
+     */
+    public void destroy() {
+        if(overlay != null) {
+            // Hide non-autoclosed to prevent timeout reset
+            overlay.hide(false);
+            overlay.removeFromParent();
+            overlay = null;
+            overlayLabel = null;
+        }
+    }
+
+    private Widget createCloseButton(String caption) {
+        VButton closeButton = new VButton();
+        if(caption != null) {
+            closeButton.setText(caption);
+        } else {
+            closeButton.setHtml("&#10005;");
+        }
+        closeButton.addStyleName("close-button");
+        closeButton.addClickHandler(e -> {
+            close();
+            listener.dismissed();
+        });
+        return closeButton;
+    }
+
+    private Widget createButton(final int id, int index, String caption, Collection<String> styleNames) {
+        VButton redirectButton = new VButton();
+        if(caption != null) {
+            redirectButton.setText(caption);
+        }
+        redirectButton.addStyleName("button-" + index);
+        styleNames.forEach(styleName -> redirectButton.addStyleName(styleName));
+        redirectButton.addClickHandler(e -> {
+            MouseEventDetails details = MouseEventDetailsBuilder.buildMouseEventDetails(e.getNativeEvent());
+            listener.buttonClicked(id, details);
+        });
+        return redirectButton;
+    }
+}
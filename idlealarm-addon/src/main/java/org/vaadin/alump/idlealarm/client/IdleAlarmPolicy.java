@@ -0,0 +1,112 @@
+package org.vaadin.alump.idlealarm.client;
+
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+
+/**
+ * Warning and keep-alive rules of IdleAlarm. Does not depend on browser APIs, so the same rules can be used outside
+ * of browser (eg. when simulating timeouts). Values are read from state when needed, so changes of state apply right
+ * away. All times are milliseconds of {@link IdleClock}.
+ */
+public class IdleAlarmPolicy {
+
+    /**
+     * Code of warning overlay is prefetched when this many seconds are left before warning is shown
+     */
+    public static final int OVERLAY_PREFETCH_SECONDS = 60;
+
+    private final IdleAlarmState state;
+
+    private double lastActivityKeepAlive = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Create policy for given state
+     * @param state State of IdleAlarm
+     */
+    public IdleAlarmPolicy(IdleAlarmState state) {
+        this.state = state;
+    }
+
+    /**
+     * Seconds left when timeout listener has to be called. Timeout action is performed when listener is called at
+     * zero seconds left. Code of overlay is prefetched at first checkpoint.
+     * @return Seconds left, in descending order
+     */
+    public int[] getCheckpoints() {
+        int prefetch = state.secondsBefore + OVERLAY_PREFETCH_SECONDS;
+        if(!state.activityKeepAlive) {
+            return new int[] { prefetch, state.secondsBefore, 0 };
+        }
+        int threshold = getActivityKeepAliveThreshold();
+        return new int[] { Math.max(prefetch, threshold), Math.min(prefetch, threshold), state.secondsBefore, 0 };
+    }
+
+    public int getCallEverySecondWhenSecondsLeft() {
+        return state.countdownTimeout ? state.secondsBefore : 0;
+    }
+
+    /**
+     * Threshold is kept between warning and maximum inactive interval, so it's reached before warning is shown
+     */
+    public int getActivityKeepAliveThreshold() {
+        int threshold = Math.max(state.activityKeepAliveThreshold, state.secondsBefore + 1);
+        return Math.max(1, Math.min(threshold, state.maxInactiveInterval - 1));
+    }
+
+    /**
+     * Window is limited so that successful keep-alive is never blocked by previous one
+     */
+    public int getActivityKeepAliveWindow() {
+        int window = state.maxInactiveInterval - getActivityKeepAliveThreshold();
+        return Math.max(1, Math.min(state.activityKeepAliveWindow, window));
+    }
+
+    /**
+     * Check if warning is shown when given amount of seconds is left
+     * @param secondsToTimeout Seconds left to timeout
+     * @return true if warning is shown
+     */
+    public boolean isWarningTime(int secondsToTimeout) {
+        return secondsToTimeout <= state.secondsBefore && secondsToTimeout > 0;
+    }
+
+    /**
+     * Check if code of overlay should be loaded when given amount of seconds is left
+     * @param secondsToTimeout Seconds left to timeout
+     * @return true if overlay should be loaded
+     */
+    public boolean isOverlayPrefetchTime(int secondsToTimeout) {
+        return secondsToTimeout <= state.secondsBefore + OVERLAY_PREFETCH_SECONDS;
+    }
+
+    /**
+     * Check if user activity extends session when given amount of seconds is left
+     * @param secondsToTimeout Seconds left to timeout
+     * @return true if activity extends session
+     */
+    public boolean isActivityKeepAliveTime(int secondsToTimeout) {
+        return state.activityKeepAlive && secondsToTimeout <= getActivityKeepAliveThreshold();
+    }
+
+    /**
+     * Check if activity since last reset has to be checked when given amount of seconds is left. Activity before
+     * threshold was reached did not extend session, so it's checked when threshold is reached.
+     * @param secondsToTimeout Seconds left to timeout
+     * @return true if activity since last reset extends session
+     */
+    public boolean isActivityCheckTime(int secondsToTimeout) {
+        return isActivityKeepAliveTime(secondsToTimeout) && secondsToTimeout > state.secondsBefore;
+    }
+
+    /**
+     * Extend session because of user activity, at most once per keep-alive window
+     * @param now Current time
+     * @return true if session should be extended now
+     */
+    public boolean acquireActivityKeepAlive(double now) {
+        if(now - lastActivityKeepAlive >= getActivityKeepAliveWindow() * 1000.0) {
+            lastActivityKeepAlive = now;
+            return true;
+        }
+        return false;
+    }
+}
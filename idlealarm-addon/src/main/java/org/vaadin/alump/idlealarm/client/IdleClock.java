@@ -0,0 +1,14 @@
+package org.vaadin.alump.idlealarm.client;
+
+/**
+ * Monotonic clock used to track idle timeouts. Time has arbitrary origin, and only differences of values are
+ * meaningful.
+ */
+public interface IdleClock {
+
+    /**
+     * Get current time
+     * @return Time in milliseconds, never smaller than earlier values
+     */
+    double now();
+}
@@ -20,6 +20,8 @@ public class IdleCountdownLabelConnector extends AbstractComponentConnector impl
 
     protected IdleTimeoutClientUtil timeoutUtil = null;
 
+    private IdleMessageTemplate template = null;
+
     @Override
     protected void init() {
         super.init();
@@ -51,15 +53,32 @@ public class IdleCountdownLabelConnector extends AbstractComponentConnector impl
 
         if(this.getConnection() == null) {
             LOGGER.severe("No connection!");
-        } else if(!getTimeoutUtil().isRunning()) {
-            getTimeoutUtil().start(getState().maxInactiveInterval);
+        } else {
+            if(template == null || !template.isCompiledFrom(getState().formatting, getState().contentMode)) {
+                template = IdleMessageTemplate.compile(getState().formatting, getState().contentMode);
+            }
+
+            // Formatting without changing values only has to be updated when timeout is reset
+            int callEverySecond = template.hasChangingValues() ? Integer.MAX_VALUE : 0;
+            if(!getTimeoutUtil().isRunning()) {
+                getTimeoutUtil().start(getState().maxInactiveInterval, new int[0], callEverySecond);
+            } else if(getTimeoutUtil().getMaxInactiveInterval() != getState().maxInactiveInterval) {
+                getTimeoutUtil().reconfigure(getState().maxInactiveInterval, new int[0], callEverySecond);
+            } else {
+                getTimeoutUtil().setCallEverySecondWhenSecondsLeft(callEverySecond);
+            }
+            getTimeoutUtil().getTimer().runAndScheduleNext();
         }
     }
 
     @Override
     public void onIdleTimeoutUpdate(IdleTimeoutClientUtil.IdleTimeoutUpdateEvent event) {
-        String message = IdleAlarmMessageUtil.format(getState().formatting, event);
-        IdleAlarmMessageUtil.setMessageToHtml(message, getState().contentMode, getWidget());
+        if(template.isRenderedTo(getWidget().getElement())) {
+            template.update(event.getSecondsToTimeout(), event.getSecondsSinceReset(), event.getMaxInactiveInterval());
+        } else {
+            template.render(getWidget().getElement(), event.getSecondsToTimeout(), event.getSecondsSinceReset(),
+                    event.getMaxInactiveInterval());
+        }
     }
 
     protected IdleTimeoutClientUtil getTimeoutUtil() {
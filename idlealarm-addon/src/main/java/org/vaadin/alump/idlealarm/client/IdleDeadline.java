@@ -0,0 +1,120 @@
+package org.vaadin.alump.idlealarm.client;
+
+/**
+ * Deadline math of idle timeout. Does not depend on browser APIs, so the same logic can be used outside of browser
+ * (eg. when simulating timeouts). All times are milliseconds of {@link IdleClock}.
+ */
+public class IdleDeadline {
+
+    private double maxInactiveMillis;
+    private double lastReset;
+
+    /**
+     * Create new deadline, reset at given time
+     * @param maxInactiveInterval Idle timeout in seconds
+     * @param now Current time
+     */
+    public IdleDeadline(int maxInactiveInterval, double now) {
+        this.maxInactiveMillis = maxInactiveInterval * 1000.0;
+        this.lastReset = now;
+    }
+
+    /**
+     * Reset idle timeout
+     * @param now Time of reset
+     */
+    public void reset(double now) {
+        lastReset = now;
+    }
+
+    /**
+     * Move reset to given time, if it's later than current reset
+     * @param time Time of reset
+     * @return true if reset was moved
+     */
+    public boolean resetTo(double time) {
+        if(time > lastReset) {
+            lastReset = time;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Change idle timeout. Time of last reset is kept, so deadline moves by the difference.
+     * @param maxInactiveInterval Idle timeout in seconds
+     */
+    public void setMaxInactiveInterval(int maxInactiveInterval) {
+        maxInactiveMillis = maxInactiveInterval * 1000.0;
+    }
+
+    /**
+     * Move deadline to given time. Unlike resets, this can also move deadline backwards.
+     * @param timeout Time of timeout
+     */
+    public void setTimeout(double timeout) {
+        lastReset = timeout - maxInactiveMillis;
+    }
+
+    public double getLastReset() {
+        return lastReset;
+    }
+
+    public double getTimeout() {
+        return lastReset + maxInactiveMillis;
+    }
+
+    public double millisToTimeout(double now) {
+        return lastReset + maxInactiveMillis - now;
+    }
+
+    /**
+     * Seconds left to timeout, rounded up. Zero is only returned when timeout has been reached.
+     * @param now Current time
+     * @return Seconds left, never negative
+     */
+    public int secondsToTimeout(double now) {
+        double millis = millisToTimeout(now);
+        return millis > 0 ? (int)Math.ceil(millis / 1000.0) : 0;
+    }
+
+    /**
+     * Seconds since last reset, rounded down
+     * @param now Current time
+     * @return Seconds since reset
+     */
+    public int secondsSinceReset(double now) {
+        return (int)Math.floor((now - lastReset) / 1000.0);
+    }
+
+    /**
+     * Resolve delay to next moment listener of timeout should be called. Listener is called when seconds left reach
+     * any of given checkpoints, and every time seconds left change when less than given amount of seconds is left.
+     * @param now Current time
+     * @param checkpoints Seconds left when listener is called, in descending order
+     * @param everySecondBelow Listener is called every second when this amount or less seconds is left
+     * @return Delay in milliseconds, or negative value if timeout has been reached
+     */
+    public double nextCallDelay(double now, int[] checkpoints, int everySecondBelow) {
+        double millis = millisToTimeout(now);
+        if(millis <= 0) {
+            return -1;
+        }
+
+        double everySecondMillis = everySecondBelow * 1000.0;
+        if(millis <= everySecondMillis) {
+            // Next moment when rounded up seconds change
+            return millis - (Math.ceil(millis / 1000.0) - 1) * 1000.0;
+        }
+
+        double delay = millis - everySecondMillis;
+        for(int secondsLeft : checkpoints) {
+            double checkpointDelay = millis - secondsLeft * 1000.0;
+            if(checkpointDelay > 0) {
+                delay = Math.min(delay, checkpointDelay);
+                break;
+            }
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,370 @@
+package org.vaadin.alump.idlealarm.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.user.client.Timer;
+import com.vaadin.client.ApplicationConnection;
+
+/**
+ * Page wide scheduler shared by all idle timeout listeners. Deadlines are kept in one priority queue, and only one
+ * timer is armed for the next deadline due. Also requests of each application connection are listened with one
+ * handler, however many listeners are interested of those.
+ * <p>
+ * Browsers throttle timers of hidden pages, sometimes to once a minute. When any listener requests it, the next
+ * deadline is armed in Web Worker instead, as timers of workers are not throttled the same way. Visibility of page is
+ * also tracked here, so that listeners can stop updating DOM while page is hidden.
+ */
+public class IdleDeadlineScheduler {
+
+    private final static Logger LOGGER = Logger.getLogger(IdleDeadlineScheduler.class.getName());
+
+    // Posts message back when delay given in message has passed, negative delay cancels
+    private static final String WORKER_SCRIPT = "var t;onmessage=function(e){clearTimeout(t);"
+            + "if(e.data>=0){t=setTimeout(function(){postMessage(0);},e.data);}};";
+
+    private static IdleDeadlineScheduler instance;
+
+    /**
+     * Task scheduled to scheduler
+     */
+    public static class ScheduledTask implements Comparable<ScheduledTask> {
+        private final Runnable task;
+        private final double due;
+        private final long order;
+        private IdleDeadlineScheduler scheduler;
+
+        private ScheduledTask(Runnable task, double due, long order, IdleDeadlineScheduler scheduler) {
+            this.task = task;
+            this.due = due;
+            this.order = order;
+            this.scheduler = scheduler;
+        }
+
+        /**
+         * Cancel task, if it has not been run yet
+         */
+        public void cancel() {
+            if(scheduler != null) {
+                scheduler.cancel(this);
+                scheduler = null;
+            }
+        }
+
+        public boolean isPending() {
+            return scheduler != null;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask other) {
+            int result = Double.compare(due, other.due);
+            return result != 0 ? result : Long.compare(order, other.order);
+        }
+    }
+
+    private final PriorityQueue<ScheduledTask> queue = new PriorityQueue<>();
+    private final Map<ApplicationConnection,List<Runnable>> requestListeners = new HashMap<>();
+    private final Map<ApplicationConnection,HandlerRegistration> requestHandlers = new HashMap<>();
+    private final List<Runnable> visibilityListeners = new ArrayList<>();
+    private JavaScriptObject visibilityHandler;
+    private long counter = 0;
+    private double armedFor = Double.NaN;
+
+    // Amount of listeners requesting worker timer
+    private int workerUsers = 0;
+    private JavaScriptObject worker;
+    private boolean workerFailed = false;
+
+    private final Timer timer = new Timer() {
+        @Override
+        public void run() {
+            onTimer();
+        }
+    };
+
+    protected IdleDeadlineScheduler() {
+    }
+
+    /**
+     * Get scheduler of this page
+     * @return Scheduler instance
+     */
+    public static IdleDeadlineScheduler get() {
+        if(instance == null) {
+            instance = new IdleDeadlineScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Schedule task to be run after given delay
+     * @param task Task run
+     * @param delayMs Delay in milliseconds
+     * @return Scheduled task, that can be cancelled
+     */
+    public ScheduledTask schedule(Runnable task, int delayMs) {
+        ScheduledTask scheduled = new ScheduledTask(task, now() + Math.max(0, delayMs), ++counter, this);
+        queue.add(scheduled);
+        if(queue.peek() == scheduled) {
+            arm();
+        }
+        return scheduled;
+    }
+
+    /**
+     * Run task when browser is idle, or after two seconds at latest. Used for work that should not delay more
+     * important tasks.
+     * @param task Task run
+     */
+    public native void scheduleIdle(Runnable task)
+    /*-{
+        var run = $entry(function() {
+            task.@java.lang.Runnable::run()();
+        });
+        if($wnd.requestIdleCallback) {
+            $wnd.requestIdleCallback(run, { timeout: 2000 });
+        } else {
+            $wnd.setTimeout(run, 0);
+        }
+    }-*/;
+
+    /**
+     * Add listener called when request of given connection starts
+     * @param connection Connection listened
+     * @param listener Listener called
+     * @return Registration used to remove listener
+     */
+    public HandlerRegistration addRequestStartingListener(ApplicationConnection connection, Runnable listener) {
+        List<Runnable> listeners = requestListeners.get(connection);
+        if(listeners == null) {
+            listeners = new ArrayList<>();
+            requestListeners.put(connection, listeners);
+            requestHandlers.put(connection, connection.addHandler(ApplicationConnection.RequestStartingEvent.TYPE,
+                    new ApplicationConnection.CommunicationHandler() {
+
+                @Override
+                public void onRequestStarting(ApplicationConnection.RequestStartingEvent e) {
+                    // Copied, as listeners might remove themselves
+                    new ArrayList<>(requestListeners.get(connection)).forEach(Runnable::run);
+                }
+
+                @Override
+                public void onResponseHandlingStarted(ApplicationConnection.ResponseHandlingStartedEvent e) {
+                    //ignored
+                }
+
+                @Override
+                public void onResponseHandlingEnded(ApplicationConnection.ResponseHandlingEndedEvent e) {
+                    //ignored
+                }
+            }));
+        }
+        listeners.add(listener);
+
+        return () -> removeRequestStartingListener(connection, listener);
+    }
+
+    /**
+     * Arm deadlines in Web Worker while returned registration is not removed. Falls back to regular timer if worker
+     * can not be created.
+     * @return Registration used to release worker timer
+     */
+    public HandlerRegistration useWorkerTimer() {
+        if(workerUsers++ == 0 && !workerFailed) {
+            worker = createWorker(WORKER_SCRIPT);
+            if(worker == null) {
+                onWorkerError();
+            } else {
+                rearm();
+            }
+        }
+
+        boolean[] removed = { false };
+        return () -> {
+            if(!removed[0]) {
+                removed[0] = true;
+                if(--workerUsers == 0 && worker != null) {
+                    terminateWorker(worker);
+                    worker = null;
+                    rearm();
+                }
+            }
+        };
+    }
+
+    /**
+     * Check if deadlines are currently armed in Web Worker
+     * @return true if worker timer is used
+     */
+    public boolean isWorkerTimerActive() {
+        return worker != null;
+    }
+
+    /**
+     * Add listener called when page is hidden or shown again
+     * @param listener Listener called
+     * @return Registration used to remove listener
+     * @see #isPageHidden()
+     */
+    public HandlerRegistration addVisibilityListener(Runnable listener) {
+        if(visibilityHandler == null) {
+            visibilityHandler = addVisibilityHandler();
+        }
+        visibilityListeners.add(listener);
+
+        return () -> {
+            if(visibilityListeners.remove(listener) && visibilityListeners.isEmpty()) {
+                removeVisibilityHandler(visibilityHandler);
+                visibilityHandler = null;
+            }
+        };
+    }
+
+    /**
+     * Check if page is hidden, eg. in background tab or minimized window
+     * @return true if hidden
+     */
+    public native boolean isPageHidden()
+    /*-{
+        return $doc.hidden === true;
+    }-*/;
+
+    private void onVisibilityChange() {
+        // Copied, as listeners might remove themselves
+        new ArrayList<>(visibilityListeners).forEach(Runnable::run);
+    }
+
+    private native JavaScriptObject addVisibilityHandler()
+    /*-{
+        var self = this;
+        var handler = $entry(function() {
+            self.@org.vaadin.alump.idlealarm.client.IdleDeadlineScheduler::onVisibilityChange()();
+        });
+        $doc.addEventListener('visibilitychange', handler);
+        return handler;
+    }-*/;
+
+    private static native void removeVisibilityHandler(JavaScriptObject handler)
+    /*-{
+        $doc.removeEventListener('visibilitychange', handler);
+    }-*/;
+
+    private void onWorkerError() {
+        LOGGER.warning("Web Worker timer not available, using regular timer");
+        workerFailed = true;
+        if(worker != null) {
+            terminateWorker(worker);
+            worker = null;
+        }
+        rearm();
+    }
+
+    private void onTimer() {
+        armedFor = Double.NaN;
+        runDue();
+    }
+
+    private native JavaScriptObject createWorker(String script)
+    /*-{
+        var self = this;
+        var url = null;
+        try {
+            url = $wnd.URL.createObjectURL(new $wnd.Blob([script], { type: 'text/javascript' }));
+            var worker = new $wnd.Worker(url);
+            worker.onmessage = $entry(function() {
+                self.@org.vaadin.alump.idlealarm.client.IdleDeadlineScheduler::onTimer()();
+            });
+            // Eg. Content Security Policy not allowing blob: workers
+            worker.onerror = $entry(function(e) {
+                e.preventDefault();
+                self.@org.vaadin.alump.idlealarm.client.IdleDeadlineScheduler::onWorkerError()();
+            });
+            worker.url = url;
+            return worker;
+        } catch(e) {
+            if(url) {
+                $wnd.URL.revokeObjectURL(url);
+            }
+            return null;
+        }
+    }-*/;
+
+    private static native void postDelay(JavaScriptObject worker, int delayMs)
+    /*-{
+        worker.postMessage(delayMs);
+    }-*/;
+
+    private static native void terminateWorker(JavaScriptObject worker)
+    /*-{
+        worker.terminate();
+        $wnd.URL.revokeObjectURL(worker.url);
+    }-*/;
+
+    private void removeRequestStartingListener(ApplicationConnection connection, Runnable listener) {
+        List<Runnable> listeners = requestListeners.get(connection);
+        if(listeners != null && listeners.remove(listener) && listeners.isEmpty()) {
+            requestListeners.remove(connection);
+            requestHandlers.remove(connection).removeHandler();
+        }
+    }
+
+    private void cancel(ScheduledTask task) {
+        boolean wasNext = queue.peek() == task;
+        queue.remove(task);
+        if(wasNext) {
+            arm();
+        }
+    }
+
+    private void runDue() {
+        double now = now();
+        ScheduledTask next;
+        while((next = queue.peek()) != null && next.due <= now) {
+            queue.poll();
+            next.scheduler = null;
+            next.task.run();
+        }
+        arm();
+    }
+
+    private void arm() {
+        ScheduledTask next = queue.peek();
+        if(next == null) {
+            disarm();
+        } else if(next.due != armedFor) {
+            armedFor = next.due;
+            int delayMs = (int)Math.max(0, Math.ceil(next.due - now()));
+            if(worker != null) {
+                postDelay(worker, delayMs);
+            } else {
+                timer.schedule(delayMs);
+            }
+        }
+    }
+
+    private void disarm() {
+        timer.cancel();
+        if(worker != null) {
+            postDelay(worker, -1);
+        }
+        armedFor = Double.NaN;
+    }
+
+    /**
+     * Arm next deadline again, after timer used has been changed
+     */
+    private void rearm() {
+        disarm();
+        arm();
+    }
+
+    private static double now() {
+        return BrowserIdleClock.get().now();
+    }
+}
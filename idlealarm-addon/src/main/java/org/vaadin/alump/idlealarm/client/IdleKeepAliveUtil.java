@@ -0,0 +1,53 @@
+package org.vaadin.alump.idlealarm.client;
+
+import com.vaadin.client.ApplicationConnection;
+import com.vaadin.shared.util.SharedUtil;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+
+/**
+ * Sends lightweight keep-alive requests handled by IdleKeepAliveFilter on server side
+ */
+public class IdleKeepAliveUtil {
+
+    /**
+     * Resolve URL of keep-alive requests
+     * @param connection Application connection used to resolve service URL
+     * @return URL of keep-alive requests
+     */
+    public static String getKeepAliveUrl(ApplicationConnection connection) {
+        return SharedUtil.addGetParameters(connection.getConfiguration().getServiceUrl(),
+                IdleAlarmState.KEEP_ALIVE_PARAMETER);
+    }
+
+    public interface KeepAliveCallback {
+        /**
+         * Called when keep-alive request has completed
+         * @param extended true if server confirmed that session was extended
+         */
+        void onKeepAliveResponse(boolean extended);
+    }
+
+    /**
+     * Send keep-alive request with fetch keepalive. Request carries CSRF token of session, as server only extends
+     * sessions of requests that know it.
+     * @param url URL of keep-alive request
+     * @param token CSRF token of session
+     * @param callback Callback called when request has completed or failed
+     * @return true if request was sent, false if browser does not support fetch
+     */
+    public static native boolean sendKeepAlive(String url, String token, KeepAliveCallback callback)
+    /*-{
+        if(!$wnd.fetch) {
+            return false;
+        }
+        var headers = {};
+        headers[@org.vaadin.alump.idlealarm.client.shared.IdleAlarmState::KEEP_ALIVE_TOKEN_HEADER] = token;
+        var respond = $entry(function(extended) {
+            callback.@org.vaadin.alump.idlealarm.client.IdleKeepAliveUtil.KeepAliveCallback::onKeepAliveResponse(Z)(extended);
+        });
+        $wnd.fetch(url, { method: 'POST', keepalive: true, credentials: 'same-origin', headers: headers }).then(
+            function(response) { respond(response.status === 204); },
+            function() { respond(false); });
+        return true;
+    }-*/;
+}
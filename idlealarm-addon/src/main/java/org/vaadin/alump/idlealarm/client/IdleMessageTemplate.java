@@ -0,0 +1,274 @@
+package org.vaadin.alump.idlealarm.client;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
+import com.google.gwt.dom.client.PreElement;
+import com.google.gwt.dom.client.Text;
+import com.google.gwt.i18n.client.DateTimeFormat;
+import com.vaadin.shared.ui.ContentMode;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmFormatting;
+
+/**
+ * Message formatting compiled to literal and value segments. Template is rendered once to target element, and
+ * updates only change text nodes of values that have changed.
+ */
+public class IdleMessageTemplate {
+
+    private static final String[] TOKENS = {
+            IdleAlarmFormatting.SECS_TO_TIMEOUT,
+            IdleAlarmFormatting.SECS_SINCE_RESET,
+            IdleAlarmFormatting.SECS_MAX_IDLE_TIMEOUT,
+            IdleAlarmFormatting.MINS_TO_TIMEOUT,
+            IdleAlarmFormatting.MMSS_TO_TIMEOUT,
+            IdleAlarmFormatting.TIMEOUT_TIME };
+
+    private static final int SECS_TO_TIMEOUT = 0;
+    private static final int SECS_SINCE_RESET = 1;
+    private static final int SECS_MAX_IDLE_TIMEOUT = 2;
+    private static final int MINS_TO_TIMEOUT = 3;
+    private static final int MMSS_TO_TIMEOUT = 4;
+    private static final int TIMEOUT_TIME = 5;
+
+    private static final String MARKER_ATTRIBUTE = "data-idle-alarm-value";
+
+    private final String formatting;
+    private final ContentMode contentMode;
+    private final String[] literals;
+    private final int[] tokens;
+    private final int[] keys;
+    private final Text[] nodes;
+    private Element target = null;
+    // HTML templates with values outside of text content (eg. in attributes) are rendered again when values change
+    private boolean renderAll = false;
+
+    private IdleMessageTemplate(String formatting, ContentMode contentMode, List<String> literals,
+            List<Integer> tokens) {
+        this.formatting = formatting;
+        this.contentMode = contentMode;
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.tokens = new int[tokens.size()];
+        for(int i = 0; i < this.tokens.length; ++i) {
+            this.tokens[i] = tokens.get(i);
+        }
+        this.keys = new int[this.tokens.length];
+        this.nodes = new Text[this.tokens.length];
+    }
+
+    /**
+     * Parse formatting to template
+     * @param formatting Formatting with IdleAlarmFormatting values
+     * @param contentMode Content mode of formatting
+     * @return Compiled template
+     */
+    public static IdleMessageTemplate compile(String formatting, ContentMode contentMode) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> tokens = new ArrayList<>();
+
+        int position = 0;
+        while(true) {
+            int next = -1;
+            int token = -1;
+            for(int i = 0; i < TOKENS.length; ++i) {
+                int index = formatting.indexOf(TOKENS[i], position);
+                if(index >= 0 && (next < 0 || index < next)) {
+                    next = index;
+                    token = i;
+                }
+            }
+            if(next < 0) {
+                literals.add(formatting.substring(position));
+                break;
+            }
+            literals.add(formatting.substring(position, next));
+            tokens.add(token);
+            position = next + TOKENS[token].length();
+        }
+
+        return new IdleMessageTemplate(formatting, contentMode, literals, tokens);
+    }
+
+    /**
+     * Check if template was compiled from given values
+     * @param formatting Formatting compared
+     * @param contentMode Content mode compared
+     * @return true if same values were used
+     */
+    public boolean isCompiledFrom(String formatting, ContentMode contentMode) {
+        return this.formatting.equals(formatting) && this.contentMode == contentMode;
+    }
+
+    /**
+     * Check if template has values that change while time passes (not only when timeout is reset)
+     * @return true if values change every second
+     */
+    public boolean hasChangingValues() {
+        for(int token : tokens) {
+            if(token == SECS_TO_TIMEOUT || token == SECS_SINCE_RESET || token == MMSS_TO_TIMEOUT
+                    || token == MINS_TO_TIMEOUT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if template is rendered to given element
+     * @param target Element checked
+     * @return true if later updates will be applied to given element
+     */
+    public boolean isRenderedTo(Element target) {
+        return this.target == target;
+    }
+
+    /**
+     * Format message as string
+     */
+    public String format(int secondsToTimeout, int secondsSinceReset, int maxInactiveInterval) {
+        StringBuilder builder = new StringBuilder(literals[0]);
+        for(int i = 0; i < tokens.length; ++i) {
+            builder.append(toString(tokens[i], key(tokens[i], secondsToTimeout, secondsSinceReset,
+                    maxInactiveInterval)));
+            builder.append(literals[i + 1]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Render template to given element, replacing its content. Element is updated by later update calls.
+     * @param target Element where message is rendered
+     */
+    public void render(Element target, int secondsToTimeout, int secondsSinceReset, int maxInactiveInterval) {
+        this.target = target;
+        renderAll = false;
+        for(int i = 0; i < tokens.length; ++i) {
+            keys[i] = key(tokens[i], secondsToTimeout, secondsSinceReset, maxInactiveInterval);
+        }
+
+        if(contentMode == ContentMode.HTML) {
+            renderHtml(target);
+        } else {
+            target.removeAllChildren();
+            Node parent = target;
+            if(contentMode == ContentMode.PREFORMATTED) {
+                PreElement preElement = Document.get().createPreElement();
+                target.appendChild(preElement);
+                parent = preElement;
+            }
+            appendText(parent, literals[0]);
+            for(int i = 0; i < tokens.length; ++i) {
+                nodes[i] = Document.get().createTextNode(toString(tokens[i], keys[i]));
+                parent.appendChild(nodes[i]);
+                appendText(parent, literals[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Update values of rendered message. Only values that changed are written to DOM.
+     */
+    public void update(int secondsToTimeout, int secondsSinceReset, int maxInactiveInterval) {
+        if(target == null) {
+            return;
+        }
+
+        boolean changed = false;
+        for(int i = 0; i < tokens.length; ++i) {
+            int key = key(tokens[i], secondsToTimeout, secondsSinceReset, maxInactiveInterval);
+            if(key != keys[i]) {
+                keys[i] = key;
+                changed = true;
+                if(!renderAll) {
+                    nodes[i].setData(toString(tokens[i], key));
+                }
+            }
+        }
+
+        if(changed && renderAll) {
+            target.setInnerHTML(format(secondsToTimeout, secondsSinceReset, maxInactiveInterval));
+        }
+    }
+
+    private void renderHtml(Element target) {
+        // Values are rendered as markers first, and markers are then replaced with text nodes
+        StringBuilder builder = new StringBuilder(literals[0]);
+        for(int i = 0; i < tokens.length; ++i) {
+            builder.append("<span ").append(MARKER_ATTRIBUTE).append("=\"").append(i).append("\"></span>");
+            builder.append(literals[i + 1]);
+        }
+        target.setInnerHTML(builder.toString());
+
+        for(int i = 0; i < tokens.length; ++i) {
+            Element marker = findMarker(target, MARKER_ATTRIBUTE, i);
+            if(marker == null) {
+                renderAll = true;
+                break;
+            }
+            nodes[i] = Document.get().createTextNode(toString(tokens[i], keys[i]));
+            marker.getParentNode().replaceChild(nodes[i], marker);
+        }
+
+        if(renderAll) {
+            StringBuilder html = new StringBuilder(literals[0]);
+            for(int i = 0; i < tokens.length; ++i) {
+                nodes[i] = null;
+                html.append(toString(tokens[i], keys[i])).append(literals[i + 1]);
+            }
+            target.setInnerHTML(html.toString());
+        }
+    }
+
+    private static void appendText(Node parent, String text) {
+        if(!text.isEmpty()) {
+            parent.appendChild(Document.get().createTextNode(text));
+        }
+    }
+
+    /**
+     * Resolve key of value, values are only formatted again when their key changes
+     */
+    private static int key(int token, int secondsToTimeout, int secondsSinceReset, int maxInactiveInterval) {
+        switch(token) {
+            case SECS_TO_TIMEOUT:
+            case MMSS_TO_TIMEOUT:
+                return secondsToTimeout;
+            case SECS_SINCE_RESET:
+                return secondsSinceReset;
+            case SECS_MAX_IDLE_TIMEOUT:
+                return maxInactiveInterval;
+            case MINS_TO_TIMEOUT:
+                return (secondsToTimeout + 59) / 60;
+            case TIMEOUT_TIME:
+                // Minute of timeout, as time is shown without seconds
+                return (int)((Duration.currentTimeMillis() / 1000.0 + secondsToTimeout) / 60.0);
+            default:
+                throw new IllegalArgumentException("Unknown token " + token);
+        }
+    }
+
+    private static String toString(int token, int key) {
+        switch(token) {
+            case MMSS_TO_TIMEOUT:
+                return twoDigits(key / 60) + ":" + twoDigits(key % 60);
+            case TIMEOUT_TIME:
+                return DateTimeFormat.getFormat(DateTimeFormat.PredefinedFormat.TIME_SHORT)
+                        .format(new Date(key * 60000L));
+            default:
+                return String.valueOf(key);
+        }
+    }
+
+    private static String twoDigits(int value) {
+        return value < 10 ? "0" + value : String.valueOf(value);
+    }
+
+    private static native Element findMarker(Element target, String attribute, int index)
+    /*-{
+        return target.querySelector('[' + attribute + '="' + index + '"]');
+    }-*/;
+}
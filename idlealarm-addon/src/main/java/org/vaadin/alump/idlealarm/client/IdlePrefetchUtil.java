@@ -0,0 +1,67 @@
+package org.vaadin.alump.idlealarm.client;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+import org.vaadin.alump.idlealarm.client.shared.TimeoutAction;
+
+/**
+ * Adds resource hints for redirect targets of IdleAlarm, so that navigation at timeout is served from cache
+ */
+public class IdlePrefetchUtil {
+
+    // Hints are kept in document, so each target is hinted once per page
+    private static final Set<String> hinted = new HashSet<>();
+
+    /**
+     * Prefetch redirect targets of given state, unless prefetching is disabled
+     * @param state State of IdleAlarm
+     */
+    public static void prefetchRedirectTargets(IdleAlarmState state) {
+        if(!state.redirectPrefetch) {
+            return;
+        }
+        if(state.timeoutAction == TimeoutAction.REDIRECT && state.timeoutRedirectURL != null) {
+            prefetch(state.timeoutRedirectURL);
+        }
+        state.buttons.values().forEach(button -> {
+            if(button.prefetchURL != null) {
+                prefetch(button.prefetchURL);
+            }
+        });
+    }
+
+    /**
+     * Prefetch given URL. Browser is also asked to preconnect, if URL is in other origin than page.
+     * @param url URL prefetched
+     */
+    public static void prefetch(String url) {
+        if(hinted.add(url)) {
+            addHints(url);
+        }
+    }
+
+    private static native void addHints(String url)
+    /*-{
+        // Navigation uses credentialed connection, so hints are not marked crossorigin
+        var addLink = function(rel, href) {
+            var link = $doc.createElement('link');
+            link.rel = rel;
+            link.href = href;
+            $doc.head.appendChild(link);
+        };
+
+        var origin = null;
+        try {
+            origin = new $wnd.URL(url, $wnd.location.href).origin;
+        } catch(e) {
+            // Relative URL and browser without URL constructor, page's own origin
+        }
+        if(origin && origin !== 'null' && origin !== $wnd.location.origin) {
+            // Connection is also useful in browsers not supporting prefetch
+            addLink('preconnect', origin);
+        }
+        addLink('prefetch', url);
+    }-*/;
+}
@@ -0,0 +1,106 @@
+package org.vaadin.alump.idlealarm.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+import com.vaadin.client.ApplicationConnection;
+import com.vaadin.shared.ApplicationConstants;
+import elemental.json.Json;
+import elemental.json.JsonException;
+import elemental.json.JsonObject;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+
+/**
+ * Loads configuration profiles of IdleAlarm. Profiles are immutable, so each profile is requested once per page, and
+ * browser cache serves it to later pages.
+ */
+public class IdleProfileLoader {
+
+    private final static Logger LOGGER = Logger.getLogger(IdleProfileLoader.class.getName());
+
+    @FunctionalInterface
+    public interface ProfileCallback {
+        /**
+         * Called when profile has been loaded
+         * @param profile Values of profile, null if profile could not be loaded
+         */
+        void profileLoaded(JsonObject profile);
+    }
+
+    private static final Map<String,JsonObject> profiles = new HashMap<>();
+    private static final Map<String,List<ProfileCallback>> pending = new HashMap<>();
+
+    /**
+     * Load profile with given key. Callback is called right away if profile has been loaded already.
+     * @param connection Application connection used to resolve URL of profile
+     * @param key Key of profile
+     * @param callback Callback called when profile is loaded
+     */
+    public static void load(ApplicationConnection connection, String key, ProfileCallback callback) {
+        JsonObject profile = profiles.get(key);
+        if(profile != null) {
+            callback.profileLoaded(profile);
+            return;
+        }
+
+        List<ProfileCallback> callbacks = pending.get(key);
+        if(callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        pending.put(key, callbacks);
+
+        String url = connection.translateVaadinUri(ApplicationConstants.APP_PROTOCOL_PREFIX
+                + ApplicationConstants.APP_PATH + "/" + IdleAlarmState.PROFILE_PATH + "/" + key);
+        RequestBuilder builder = new RequestBuilder(RequestBuilder.GET, url);
+        builder.setCallback(new RequestCallback() {
+            @Override
+            public void onResponseReceived(Request request, Response response) {
+                if(response.getStatusCode() != Response.SC_OK) {
+                    LOGGER.warning("Failed to load IdleAlarm profile " + key + ": " + response.getStatusCode());
+                    loaded(key, null);
+                    return;
+                }
+                try {
+                    loaded(key, Json.parse(response.getText()));
+                } catch(JsonException e) {
+                    LOGGER.warning("Invalid IdleAlarm profile " + key + ": " + e.getMessage());
+                    loaded(key, null);
+                }
+            }
+
+            @Override
+            public void onError(Request request, Throwable exception) {
+                LOGGER.warning("Failed to load IdleAlarm profile " + key + ": " + exception.getMessage());
+                loaded(key, null);
+            }
+        });
+
+        try {
+            builder.send();
+        } catch(RequestException e) {
+            LOGGER.warning("Failed to load IdleAlarm profile " + key + ": " + e.getMessage());
+            loaded(key, null);
+        }
+    }
+
+    private static void loaded(String key, JsonObject profile) {
+        if(profile != null) {
+            profiles.put(key, profile);
+        }
+        List<ProfileCallback> callbacks = pending.remove(key);
+        if(callbacks != null) {
+            callbacks.forEach(callback -> callback.profileLoaded(profile));
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package org.vaadin.alump.idlealarm.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.user.client.Timer;
+
+/**
+ * Coordinates idle timeouts of browser tabs showing UIs of same session. Tabs exchange messages with BroadcastChannel,
+ * or with storage events of localStorage in browsers without BroadcastChannel.
+ * <p>
+ * Oldest open tab is leader. Only leader extends the session because of user activity; other tabs forward their
+ * activity and keep-alive requests to the leader. All tabs publish resets of timeout, so every tab shares the same
+ * deadline and shows warnings and performs timeout actions at the same time.
+ */
+public class IdleTabCoordinator {
+
+    private static final String CHANNEL_PREFIX = "v-idleAlarm-";
+
+    private static final int HEARTBEAT_MS = 10000;
+
+    // Timers of hidden tabs can be throttled to once per minute, so peers are dropped only after that
+    private static final int PEER_TIMEOUT_MS = 75000;
+
+    static final String RESET = "reset";
+    static final String ACTIVITY = "activity";
+    static final String KEEP_ALIVE = "keepalive";
+    static final String TIMEOUT = "timeout";
+    static final String HELLO = "hello";
+    static final String BYE = "bye";
+
+    public interface TabListener {
+        /**
+         * Other tab reset the timeout
+         * @param time Time of reset, as given by {@link BrowserIdleClock}
+         */
+        void onRemoteReset(double time);
+
+        /**
+         * User was active in other tab. Only called in leader tab.
+         * @param time Time of activity, as given by {@link BrowserIdleClock}
+         */
+        void onRemoteActivity(double time);
+
+        /**
+         * Other tab asks leader to extend the session. Only called in leader tab.
+         */
+        void onKeepAliveRequested();
+
+        /**
+         * Other tab performed timeout action
+         */
+        void onRemoteTimeout();
+    }
+
+    private static class Peer {
+        private final double started;
+        private double lastSeen;
+
+        private Peer(double started, double lastSeen) {
+            this.started = started;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private final TabListener listener;
+    private final String tabId;
+    private final double started;
+    private final Map<String,Peer> peers = new HashMap<>();
+    private final JavaScriptObject transport;
+    private final Timer heartbeat;
+
+    /**
+     * Create coordinator and join tabs using same key
+     * @param key Key shared by UIs of same session
+     * @param listener Listener of messages from other tabs
+     */
+    public IdleTabCoordinator(String key, TabListener listener) {
+        this.listener = listener;
+        this.started = now();
+        this.tabId = createTabId();
+        this.transport = createTransport(CHANNEL_PREFIX + key);
+
+        heartbeat = new Timer() {
+            @Override
+            public void run() {
+                prunePeers();
+                post(HELLO, started);
+            }
+        };
+        heartbeat.scheduleRepeating(HEARTBEAT_MS);
+        post(HELLO, started);
+    }
+
+    /**
+     * Check if this tab is leader. Tab is leader when no older tabs are open.
+     * @return true if leader
+     */
+    public boolean isLeader() {
+        for(Map.Entry<String,Peer> entry : peers.entrySet()) {
+            Peer peer = entry.getValue();
+            if(peer.started < started || (peer.started == started && entry.getKey().compareTo(tabId) < 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Publish reset of timeout to other tabs
+     * @param time Time of reset, as given by {@link BrowserIdleClock}
+     */
+    public void publishReset(double time) {
+        // Monotonic clocks of tabs have different origins, so times are shared as wall clock time
+        post(RESET, BrowserIdleClock.get().toEpochMillis(time));
+    }
+
+    /**
+     * Publish user activity to leader tab
+     * @param time Time of activity, as given by {@link BrowserIdleClock}
+     */
+    public void publishActivity(double time) {
+        post(ACTIVITY, BrowserIdleClock.get().toEpochMillis(time));
+    }
+
+    public void requestKeepAlive() {
+        post(KEEP_ALIVE, now());
+    }
+
+    public void publishTimeout() {
+        post(TIMEOUT, now());
+    }
+
+    /**
+     * Leave coordination. This must be called to release resources.
+     */
+    public void stop() {
+        heartbeat.cancel();
+        post(BYE, started);
+        closeTransport(transport);
+        peers.clear();
+    }
+
+    private void onMessage(String type, String from, double value) {
+        if(from == null || from.equals(tabId)) {
+            return;
+        }
+
+        if(BYE.equals(type)) {
+            peers.remove(from);
+            return;
+        }
+
+        Peer peer = peers.get(from);
+        if(peer == null) {
+            // Announce this tab to new peer without waiting for next heartbeat
+            peer = new Peer(HELLO.equals(type) ? value : now(), now());
+            peers.put(from, peer);
+            if(HELLO.equals(type)) {
+                post(HELLO, started);
+            }
+        } else {
+            peer.lastSeen = now();
+        }
+
+        if(RESET.equals(type)) {
+            listener.onRemoteReset(BrowserIdleClock.get().fromEpochMillis(value));
+        } else if(TIMEOUT.equals(type)) {
+            listener.onRemoteTimeout();
+        } else if(ACTIVITY.equals(type) && isLeader()) {
+            listener.onRemoteActivity(BrowserIdleClock.get().fromEpochMillis(value));
+        } else if(KEEP_ALIVE.equals(type) && isLeader()) {
+            listener.onKeepAliveRequested();
+        }
+    }
+
+    private void onPageHide() {
+        // Let other tabs elect new leader right away
+        post(BYE, started);
+    }
+
+    private void prunePeers() {
+        double limit = now() - PEER_TIMEOUT_MS;
+        peers.values().removeIf(peer -> peer.lastSeen < limit);
+    }
+
+    private void post(String type, double value) {
+        postMessage(transport, type, tabId, value);
+    }
+
+    private static double now() {
+        return Duration.currentTimeMillis();
+    }
+
+    private static native String createTabId()
+    /*-{
+        return Math.random().toString(36).substring(2) + Date.now().toString(36);
+    }-*/;
+
+    private native JavaScriptObject createTransport(String name)
+    /*-{
+        var self = this;
+        var onPageHide = $entry(function() {
+            self.@org.vaadin.alump.idlealarm.client.IdleTabCoordinator::onPageHide()();
+        });
+        $wnd.addEventListener('pagehide', onPageHide);
+
+        var receive = $entry(function(data) {
+            if(data && typeof data.type === 'string') {
+                self.@org.vaadin.alump.idlealarm.client.IdleTabCoordinator::onMessage(*)(
+                    data.type, data.from, +data.value);
+            }
+        });
+
+        if(typeof $wnd.BroadcastChannel === 'function') {
+            var channel = new $wnd.BroadcastChannel(name);
+            channel.onmessage = function(e) {
+                receive(e.data);
+            };
+            return { channel: channel, onPageHide: onPageHide };
+        }
+
+        // Storage events are only fired in other tabs, so written item can be removed right away
+        var storage = null;
+        try {
+            storage = $wnd.localStorage;
+        } catch(e) {
+            // Storage is not available
+        }
+        var onStorage = function(e) {
+            if(e.key === name && e.newValue) {
+                try {
+                    receive(JSON.parse(e.newValue));
+                } catch(err) {
+                    // Ignore invalid values
+                }
+            }
+        };
+        if(storage) {
+            $wnd.addEventListener('storage', onStorage);
+        }
+        return { storage: storage, key: name, onStorage: onStorage, onPageHide: onPageHide };
+    }-*/;
+
+    private static native void postMessage(JavaScriptObject transport, String type, String from, double value)
+    /*-{
+        var data = { type: type, from: from, value: value };
+        if(transport.channel) {
+            transport.channel.postMessage(data);
+        } else if(transport.storage) {
+            try {
+                data.nonce = Math.random();
+                transport.storage.setItem(transport.key, JSON.stringify(data));
+                transport.storage.removeItem(transport.key);
+            } catch(e) {
+                // Storage full or disabled, this tab will work alone
+            }
+        }
+    }-*/;
+
+    private static native void closeTransport(JavaScriptObject transport)
+    /*-{
+        $wnd.removeEventListener('pagehide', transport.onPageHide);
+        if(transport.channel) {
+            transport.channel.close();
+        } else if(transport.storage) {
+            $wnd.removeEventListener('storage', transport.onStorage);
+        }
+    }-*/;
+}
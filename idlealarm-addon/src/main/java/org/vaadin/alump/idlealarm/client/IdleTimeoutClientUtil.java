@@ -1,12 +1,9 @@
 package org.vaadin.alump.idlealarm.client;
 
 import com.google.gwt.event.shared.HandlerRegistration;
-import com.google.gwt.user.client.Timer;
-import com.vaadin.client.ApplicationConnection;
 import com.vaadin.client.ui.AbstractConnector;
 
-import java.sql.Time;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
@@ -20,16 +17,31 @@ public class IdleTimeoutClientUtil {
 
     private HandlerRegistration communicationReg = null;
 
+    private HandlerRegistration visibilityReg = null;
+
+    private HandlerRegistration workerTimerReg = null;
+
     private IdleTimeoutListener listener = null;
 
-    private Integer lastRequest = null;
+    private IdleTimeoutResetListener resetListener = null;
+
+    private final IdleClock clock;
+
+    private IdleDeadline deadline = null;
 
     private TimeoutTimer timer;
 
-    private Integer callWhenSecondsLeft = null;
+    // Seconds left when listener is called, in descending order
+    private int[] callWhenSecondsLeft = new int[0];
+
+    // Listener is called every second when this amount or less seconds is left
+    private int callEverySecondWhenSecondsLeft = 0;
 
     private int maxInactiveInterval;
 
+    // Time when latest request was started, used to estimate when server wrote its response
+    private double lastRequestStarted = Double.NaN;
+
     public final static int DEFAULT_CALL_FREQUENCY_MS = 1000;
 
     public static class IdleTimeoutUpdateEvent {
@@ -60,88 +72,102 @@ public class IdleTimeoutClientUtil {
         void onIdleTimeoutUpdate(IdleTimeoutUpdateEvent event);
     }
 
-    protected class TimeoutTimer extends Timer {
+    public interface IdleTimeoutResetListener {
+        /**
+         * Called when timeout is reset by activity of this page
+         * @param time Time of reset, as given by clock of util
+         */
+        void onIdleTimeoutReset(double time);
+    }
+
+    protected class TimeoutTimer implements Runnable {
+
+        private IdleDeadlineScheduler.ScheduledTask scheduled;
 
         public void runAndScheduleNext() {
-            run();
             cancel();
 
-            if(lastRequest == null) {
+            if(deadline == null) {
                 throw new IllegalStateException("Invalid state, no last request");
             }
 
-            if(callWhenSecondsLeft != null) {
-                int nextTimeout = lastRequest.intValue() + maxInactiveInterval;
-                int secondsLeft = nextTimeout - getUnixTimeStamp() - callWhenSecondsLeft.intValue();
-                if(secondsLeft <= 0) {
-                    run();
-                } else {
-                    schedule(secondsLeft * 1000);
-                }
-            } else {
-                schedule(DEFAULT_CALL_FREQUENCY_MS);
-            }
+            run();
         }
 
         @Override
         public void run() {
-            int timestamp = getUnixTimeStamp();
-            int toNextTimeout = secondsToIdleTimeout(timestamp);
-            if(toNextTimeout < 0) {
-                toNextTimeout = 0;
-            }
-            int sinceLastUpdate = secondsSinceLastUpdate(timestamp);
-            IdleTimeoutUpdateEvent event = new IdleTimeoutUpdateEvent(sinceLastUpdate, toNextTimeout,
-                    maxInactiveInterval);
+            scheduled = null;
+            double now = clock.now();
+            IdleTimeoutUpdateEvent event = new IdleTimeoutUpdateEvent(deadline.secondsSinceReset(now),
+                    deadline.secondsToTimeout(now), maxInactiveInterval);
             listener.onIdleTimeoutUpdate(event);
-            if(callWhenSecondsLeft == null && toNextTimeout > 0) {
-                schedule(DEFAULT_CALL_FREQUENCY_MS);
+            if(running) {
+                // Listener might have reset timeout, so delay is resolved from current deadline
+                scheduleNext();
             }
         }
-    }
 
-    public IdleTimeoutClientUtil(AbstractConnector connector, IdleTimeoutListener listener) {
-        this.listener = listener;
-        communicationReg = connector.getConnection().addHandler(ApplicationConnection.RequestStartingEvent.TYPE,
-                new ApplicationConnection.CommunicationHandler() {
-
-            @Override
-            public void onRequestStarting(ApplicationConnection.RequestStartingEvent e) {
-                if(running) {
-                    lastRequest = getUnixTimeStamp();
-                    getTimer().runAndScheduleNext();
-                }
+        /**
+         * Schedule next call of listener. Listener is only called at checkpoints while page is hidden, as updates
+         * between those would not be seen.
+         */
+        public void scheduleNext() {
+            int everySecondBelow = IdleDeadlineScheduler.get().isPageHidden() ? 0 : callEverySecondWhenSecondsLeft;
+            double delay = deadline.nextCallDelay(clock.now(), callWhenSecondsLeft, everySecondBelow);
+            if(delay >= 0) {
+                schedule((int)Math.ceil(delay));
+            } else {
+                cancel();
             }
+        }
 
-            @Override
-            public void onResponseHandlingStarted(ApplicationConnection.ResponseHandlingStartedEvent e) {
-                //ignored
-            }
+        public void schedule(int delayMs) {
+            cancel();
+            scheduled = IdleDeadlineScheduler.get().schedule(this, delayMs);
+        }
 
-            @Override
-            public void onResponseHandlingEnded(ApplicationConnection.ResponseHandlingEndedEvent e) {
-                //ignored
+        public void cancel() {
+            if(scheduled != null) {
+                scheduled.cancel();
+                scheduled = null;
             }
-        });
+        }
     }
 
-    public static int getUnixTimeStamp() {
-        Date date = new Date();
-        return (int) (date.getTime() * .001);
+    public IdleTimeoutClientUtil(AbstractConnector connector, IdleTimeoutListener listener) {
+        this(connector, listener, BrowserIdleClock.get());
     }
 
-    protected int secondsSinceLastUpdate(int timestamp) {
-        if(lastRequest == null) {
-            throw new IllegalStateException("No last request");
-        }
-        return timestamp - lastRequest;
+    public IdleTimeoutClientUtil(AbstractConnector connector, IdleTimeoutListener listener, IdleClock clock) {
+        this.listener = listener;
+        this.clock = clock;
+        communicationReg = IdleDeadlineScheduler.get().addRequestStartingListener(connector.getConnection(),
+                this::onRequestStarting);
+        visibilityReg = IdleDeadlineScheduler.get().addVisibilityListener(this::onVisibilityChange);
+    }
+
+    protected int secondsSinceLastUpdate() {
+        return getDeadline().secondsSinceReset(clock.now());
     }
 
-    protected int secondsToIdleTimeout(int timestamp) {
-        if(lastRequest == null) {
+    protected int secondsToIdleTimeout() {
+        return getDeadline().secondsToTimeout(clock.now());
+    }
+
+    /**
+     * Get deadline of idle timeout
+     * @return Deadline
+     * @throws IllegalStateException If util has not been started
+     */
+    public IdleDeadline getDeadline() throws IllegalStateException {
+        if(deadline == null) {
             throw new IllegalStateException("No last request");
         }
-        return lastRequest.intValue() + maxInactiveInterval - timestamp;
+        return deadline;
+    }
+
+    public IdleClock getClock() {
+        return clock;
     }
 
     protected TimeoutTimer getTimer() {
@@ -157,7 +183,13 @@ public class IdleTimeoutClientUtil {
      * @param maxInactiveInterval Idle timeout used to calculate seconds left
      */
     public void start(int maxInactiveInterval) {
+        start(maxInactiveInterval, new int[0], Integer.MAX_VALUE);
+    }
+
+    private void startTimer(int maxInactiveInterval) {
         this.maxInactiveInterval = maxInactiveInterval;
+        // Page was just loaded, so session has been extended now
+        deadline = new IdleDeadline(maxInactiveInterval, clock.now());
         running = true;
     }
 
@@ -167,8 +199,178 @@ public class IdleTimeoutClientUtil {
      * @param callWhenSecondsLeft Listener will be called when there is less or equal amount of seconds left to timeout
      */
     public void start(int maxInactiveInterval, int callWhenSecondsLeft) {
-        this.callWhenSecondsLeft = callWhenSecondsLeft;
-        start(maxInactiveInterval);
+        start(maxInactiveInterval, new int[] { callWhenSecondsLeft });
+    }
+
+    /**
+     * Start timer that will call listener each time one of given amounts of seconds is left. Start can be only
+     * called once.
+     * @param maxInactiveInterval Idle timeout used to calculate seconds left
+     * @param callWhenSecondsLeft Listener will be called when there is less or equal amount of seconds left to
+     *                            timeout than any of given values
+     */
+    public void start(int maxInactiveInterval, int[] callWhenSecondsLeft) {
+        start(maxInactiveInterval, callWhenSecondsLeft, 0);
+    }
+
+    /**
+     * Start timer that will call listener each time one of given amounts of seconds is left, and every second when
+     * less than given amount of seconds is left. Start can be only called once.
+     * @param maxInactiveInterval Idle timeout used to calculate seconds left
+     * @param callWhenSecondsLeft Listener will be called when there is less or equal amount of seconds left to
+     *                            timeout than any of given values
+     * @param callEverySecondWhenSecondsLeft Listener will be called every second when there is less or equal amount
+     *                                       of seconds left to timeout
+     */
+    public void start(int maxInactiveInterval, int[] callWhenSecondsLeft, int callEverySecondWhenSecondsLeft) {
+        setCallPoints(callWhenSecondsLeft, callEverySecondWhenSecondsLeft);
+        startTimer(maxInactiveInterval);
+    }
+
+    /**
+     * Change idle timeout and moments when listener is called, without restarting. Time of last reset is kept, and
+     * listener is called right away with updated values.
+     * @param maxInactiveInterval Idle timeout used to calculate seconds left
+     * @param callWhenSecondsLeft Listener will be called when there is less or equal amount of seconds left to
+     *                            timeout than any of given values
+     * @param callEverySecondWhenSecondsLeft Listener will be called every second when there is less or equal amount
+     *                                       of seconds left to timeout
+     * @throws IllegalStateException If util has not been started
+     */
+    public void reconfigure(int maxInactiveInterval, int[] callWhenSecondsLeft, int callEverySecondWhenSecondsLeft)
+            throws IllegalStateException {
+        if(!running) {
+            throw new IllegalStateException("Util is not running");
+        }
+        setCallPoints(callWhenSecondsLeft, callEverySecondWhenSecondsLeft);
+        this.maxInactiveInterval = maxInactiveInterval;
+        deadline.setMaxInactiveInterval(maxInactiveInterval);
+        getTimer().runAndScheduleNext();
+    }
+
+    private void setCallPoints(int[] callWhenSecondsLeft, int callEverySecondWhenSecondsLeft) {
+        this.callEverySecondWhenSecondsLeft = callEverySecondWhenSecondsLeft;
+        int[] sorted = Arrays.copyOf(callWhenSecondsLeft, callWhenSecondsLeft.length);
+        Arrays.sort(sorted);
+        this.callWhenSecondsLeft = new int[sorted.length];
+        for(int i = 0; i < sorted.length; ++i) {
+            this.callWhenSecondsLeft[i] = sorted[sorted.length - 1 - i];
+        }
+    }
+
+    public int getMaxInactiveInterval() {
+        return maxInactiveInterval;
+    }
+
+    /**
+     * Change amount of seconds left when listener is called every second. Takes effect when listener is called next
+     * time.
+     * @param secondsLeft Seconds left to timeout
+     */
+    public void setCallEverySecondWhenSecondsLeft(int secondsLeft) {
+        callEverySecondWhenSecondsLeft = secondsLeft;
+    }
+
+    /**
+     * Reset idle timeout now. Requests of application connection reset timeout automatically, this is only needed
+     * when session is extended otherwise.
+     */
+    public void reset() {
+        if(running) {
+            deadline.reset(clock.now());
+            if(resetListener != null) {
+                resetListener.onIdleTimeoutReset(deadline.getLastReset());
+            }
+            getTimer().runAndScheduleNext();
+        }
+    }
+
+    /**
+     * Reset idle timeout to given time, if it's later than current reset. Used when session was extended by request
+     * of this page that was sent at given time, but confirmed later.
+     * @param time Time when request extending session was sent, as given by clock of util
+     */
+    public void reset(double time) {
+        if(running && deadline.resetTo(time)) {
+            if(resetListener != null) {
+                resetListener.onIdleTimeoutReset(deadline.getLastReset());
+            }
+            getTimer().runAndScheduleNext();
+        }
+    }
+
+    /**
+     * Move reset of idle timeout to given time, if it's later than current reset. Used when session is extended
+     * outside of this page (eg. by other browser tab).
+     * @param time Time of reset, as given by clock of util
+     */
+    public void resetTo(double time) {
+        if(running && deadline.resetTo(time)) {
+            getTimer().runAndScheduleNext();
+        }
+    }
+
+    /**
+     * Synchronize deadline with session's last access time reported by server. Clocks of server and browser are
+     * never compared directly: time left is resolved with server's clock, and server's response is assumed to be
+     * written halfway between start of request and handling of response.
+     * @param serverLastAccess Last access of session, in milliseconds of server's clock
+     * @param serverTime Time when server wrote the response, in milliseconds of server's clock
+     */
+    public void synchronize(double serverLastAccess, double serverTime) {
+        if(!running) {
+            return;
+        }
+
+        double now = clock.now();
+        double written = Double.isNaN(lastRequestStarted) ? now : (lastRequestStarted + now) / 2.0;
+        lastRequestStarted = Double.NaN;
+
+        double previousReset = deadline.getLastReset();
+        deadline.setTimeout(written + serverLastAccess + maxInactiveInterval * 1000.0 - serverTime);
+        if(resetListener != null && deadline.getLastReset() > previousReset) {
+            resetListener.onIdleTimeoutReset(deadline.getLastReset());
+        }
+        getTimer().runAndScheduleNext();
+    }
+
+    /**
+     * Keep timer of util in Web Worker, so that listener is called on time also when page is hidden
+     * @param enabled true to use Web Worker timer
+     * @see IdleDeadlineScheduler#useWorkerTimer()
+     */
+    public void setWorkerTimer(boolean enabled) {
+        if(enabled && workerTimerReg == null) {
+            workerTimerReg = IdleDeadlineScheduler.get().useWorkerTimer();
+        } else if(!enabled && workerTimerReg != null) {
+            workerTimerReg.removeHandler();
+            workerTimerReg = null;
+        }
+    }
+
+    private void onVisibilityChange() {
+        if(!running) {
+            return;
+        }
+        if(IdleDeadlineScheduler.get().isPageHidden()) {
+            getTimer().scheduleNext();
+        } else {
+            // Updates skipped while hidden are caught up in one call
+            getTimer().runAndScheduleNext();
+        }
+    }
+
+    private void onRequestStarting() {
+        lastRequestStarted = clock.now();
+        reset();
+    }
+
+    /**
+     * Set listener called when timeout is reset by activity of this page
+     * @param listener Listener or null to remove
+     */
+    public void setResetListener(IdleTimeoutResetListener listener) {
+        resetListener = listener;
     }
 
     public boolean isRunning() {
@@ -188,6 +390,11 @@ public class IdleTimeoutClientUtil {
             communicationReg.removeHandler();
             communicationReg = null;
         }
+        if(visibilityReg != null) {
+            visibilityReg.removeHandler();
+            visibilityReg = null;
+        }
+        setWorkerTimer(false);
     }
 
 }
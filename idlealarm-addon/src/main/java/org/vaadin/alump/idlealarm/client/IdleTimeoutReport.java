@@ -0,0 +1,84 @@
+package org.vaadin.alump.idlealarm.client;
+
+import org.vaadin.alump.idlealarm.client.shared.TimeoutAction;
+
+/**
+ * Keeps events of expired session in sessionStorage of tab, so that they can be reported to server by the next page
+ * loaded in the tab. Requests made at timeout would go to expired session, or extend it if server has not yet
+ * closed it.
+ */
+public class IdleTimeoutReport {
+
+    private static final String KEY = "org.vaadin.alump.idlealarm.timeoutReport";
+
+    private final boolean warningShown;
+    private final TimeoutAction action;
+
+    protected IdleTimeoutReport(boolean warningShown, TimeoutAction action) {
+        this.warningShown = warningShown;
+        this.action = action;
+    }
+
+    /**
+     * Store report of session expired in this tab
+     * @param warningShown true if warning was shown, but not reported to server
+     * @param action Timeout action performed, or null if none
+     */
+    public static void store(boolean warningShown, TimeoutAction action) {
+        setItem(KEY, (warningShown ? "warning" : "") + ":" + (action != null ? action.name() : ""));
+    }
+
+    /**
+     * Get report stored by earlier page of this tab. Report is removed, so it's reported once.
+     * @return Report, or null if nothing was stored
+     */
+    public static IdleTimeoutReport take() {
+        String value = removeItem(KEY);
+        int separator = value == null ? -1 : value.indexOf(':');
+        if(separator < 0) {
+            return null;
+        }
+
+        TimeoutAction action = null;
+        for(TimeoutAction candidate : TimeoutAction.values()) {
+            if(candidate.name().equals(value.substring(separator + 1))) {
+                action = candidate;
+            }
+        }
+        return new IdleTimeoutReport(separator > 0, action);
+    }
+
+    public boolean isWarningShown() {
+        return warningShown;
+    }
+
+    /**
+     * Get timeout action performed
+     * @return Action, or null if none was performed
+     */
+    public TimeoutAction getAction() {
+        return action;
+    }
+
+    private static native void setItem(String key, String value)
+    /*-{
+        try {
+            $wnd.sessionStorage.setItem(key, value);
+        } catch(e) {
+            // Storage disabled, events are not reported
+        }
+    }-*/;
+
+    private static native String removeItem(String key)
+    /*-{
+        try {
+            var value = $wnd.sessionStorage.getItem(key);
+            if(value !== null) {
+                $wnd.sessionStorage.removeItem(key);
+            }
+            return value;
+        } catch(e) {
+            return null;
+        }
+    }-*/;
+}
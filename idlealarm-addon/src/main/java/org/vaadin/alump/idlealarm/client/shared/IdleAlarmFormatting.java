@@ -19,4 +19,20 @@ public interface IdleAlarmFormatting {
      * How many seconds client thinks sessions can stay idle
      */
     String SECS_MAX_IDLE_TIMEOUT = "%SECS_MAX_IDLE_TIMEOUT%";
+
+    /**
+     * This part of message will be replaced with minutes left to next timeout, rounded up
+     */
+    String MINS_TO_TIMEOUT = "%MINS_TO_TIMEOUT%";
+
+    /**
+     * This part of message will be replaced with time left to next timeout, formatted as mm:ss
+     */
+    String MMSS_TO_TIMEOUT = "%MMSS_TO_TIMEOUT%";
+
+    /**
+     * This part of message will be replaced with time of next timeout, formatted with short time format of browser's
+     * locale
+     */
+    String TIMEOUT_TIME = "%TIMEOUT_TIME%";
 }
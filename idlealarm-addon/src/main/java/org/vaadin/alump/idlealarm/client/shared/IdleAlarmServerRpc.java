@@ -1,6 +1,7 @@
 package org.vaadin.alump.idlealarm.client.shared;
 
 import com.vaadin.shared.MouseEventDetails;
+import com.vaadin.shared.annotations.Delayed;
 import com.vaadin.shared.communication.ServerRpc;
 
 /**
@@ -12,4 +13,23 @@ public interface IdleAlarmServerRpc extends ServerRpc {
 
     void buttonClicked(int id, MouseEventDetails details);
 
+    /**
+     * Reports warning shown. Delayed, as separate request would extend the session.
+     */
+    @Delayed
+    void warningShown();
+
+    /**
+     * Reports timeout action performed when session of earlier page in the same tab expired. Delayed, as separate
+     * request would extend the session.
+     * @param action Timeout action performed
+     */
+    @Delayed
+    void timeoutActionPerformed(TimeoutAction action);
+
+    /**
+     * Reports that configuration profile could not be loaded, so server sends all values in state
+     */
+    void profileUnavailable();
+
 }
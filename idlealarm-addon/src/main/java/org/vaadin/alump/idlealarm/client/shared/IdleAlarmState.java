@@ -3,6 +3,7 @@ package org.vaadin.alump.idlealarm.client.shared;
 import com.vaadin.shared.communication.SharedState;
 import com.vaadin.shared.ui.ContentMode;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -13,13 +14,45 @@ import java.util.Map;
  */
 public class IdleAlarmState extends SharedState {
 
-    public static class ButtonState {
+    /**
+     * Query parameter identifying lightweight keep-alive requests
+     */
+    public static final String KEEP_ALIVE_PARAMETER = "v-idleKeepAlive";
+
+    /**
+     * Request header carrying CSRF token of session in lightweight keep-alive requests
+     */
+    public static final String KEEP_ALIVE_TOKEN_HEADER = "X-IdleAlarm-Token";
+
+    /**
+     * Path of configuration profiles under APP path
+     */
+    public static final String PROFILE_PATH = "idlealarm-profile";
+
+    public static class ButtonState implements Serializable {
         public String caption;
         public List<String> styleNames;
+
+        /**
+         * Target of redirect button, prefetched when warning is shown. Null if button does not redirect, or if
+         * target must not be prefetched.
+         */
+        public String prefetchURL;
     }
 
     public int maxInactiveInterval = -1;
 
+    /**
+     * Last access time of session in server's clock, in milliseconds since epoch. Stored as double, as long values
+     * are expensive in client side.
+     */
+    public double serverLastAccess = 0;
+
+    /**
+     * Server's time when response was written, in milliseconds since epoch
+     */
+    public double serverTime = 0;
+
     public int secondsBefore = 60;
 
     public String message = "Your session will expire soon";
@@ -30,12 +63,39 @@ public class IdleAlarmState extends SharedState {
 
     public String timeoutRedirectURL;
 
+    /**
+     * If redirect targets are prefetched when warning is shown
+     */
+    public boolean redirectPrefetch = true;
+
     public boolean closeEnabled = false;
     public String closeCaption = null;
 
     public TimeoutAction timeoutAction = TimeoutAction.DEFAULT;
 
+    public boolean lightweightKeepAlive = false;
+
+    public boolean activityKeepAlive = false;
+    public int activityKeepAliveWindow = 60;
+    public int activityKeepAliveThreshold = 120;
+
+    public boolean crossTabSync = false;
+    public String crossTabKey;
+
+    public boolean workerTimer = false;
+
     public List<String> styleNames = new ArrayList<>();
 
     public Map<Integer,ButtonState> buttons = new HashMap<>();
+
+    /**
+     * Key of configuration profile. Values of profile are not sent in state, client loads those from static resource
+     * before state is handled.
+     */
+    public String profile;
+
+    /**
+     * Names of values that differ from profile, values of profile are not applied to these
+     */
+    public List<String> profileOverrides;
 }
@@ -0,0 +1,243 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Recorded activity of users, replayed by IdleTrafficSimulator. Trace file has one event per line:
+ * {@code user,timestamp,type}, where timestamp is milliseconds since epoch and type is {@code request} (request to
+ * server, eg. page load or server round-trip) or {@code input} (user input handled in browser only). Empty lines and
+ * lines starting with {@code #} are ignored, and lines do not have to be ordered.
+ * <p>
+ * Each event is packed to one long (user, time since start of trace and type), ordered by user and time, so traces
+ * of tens of millions of events fit in memory and are replayed without allocation.
+ */
+public class ActivityTrace {
+
+    private static final int TYPE_BITS = 1;
+    private static final int TIME_BITS = 40;
+    private static final int USER_BITS = 22;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final long REQUEST = 1L;
+
+    /**
+     * Maximum amount of users in trace
+     */
+    public static final int MAX_USERS = 1 << USER_BITS;
+
+    private static final long HOUR_MS = 3600000L;
+
+    private final long start;
+    private final long[] events;
+    // Index of first event of each user, followed by amount of all events
+    private final int[] userOffsets;
+    private final long duration;
+
+    private ActivityTrace(long start, long[] events, int users) {
+        this.start = start;
+        this.events = events;
+        this.userOffsets = new int[users + 1];
+
+        long last = 0;
+        int user = -1;
+        for(int i = 0; i < events.length; ++i) {
+            int eventUser = user(events[i]);
+            while(user < eventUser) {
+                userOffsets[++user] = i;
+            }
+            last = Math.max(last, time(events[i]));
+        }
+        while(user < users) {
+            userOffsets[++user] = events.length;
+        }
+        this.duration = last;
+    }
+
+    /**
+     * Read trace from file
+     * @param file Trace file
+     * @return Trace read
+     * @throws IOException If reading fails
+     * @throws IllegalArgumentException If file contains invalid lines, or too many users
+     */
+    public static ActivityTrace read(Path file) throws IOException, IllegalArgumentException {
+        Map<String,Integer> userIds = new HashMap<>();
+        int[] users = new int[1024];
+        long[] times = new long[1024];
+        boolean[] requests = new boolean[1024];
+        int size = 0;
+        long start = Long.MAX_VALUE;
+
+        try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while((line = reader.readLine()) != null) {
+                ++lineNumber;
+                if(line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                int first = line.indexOf(',');
+                int second = first < 0 ? -1 : line.indexOf(',', first + 1);
+                if(second < 0) {
+                    throw new IllegalArgumentException("Invalid event at line " + lineNumber + ": " + line);
+                }
+
+                if(size == times.length) {
+                    users = Arrays.copyOf(users, size * 2);
+                    times = Arrays.copyOf(times, size * 2);
+                    requests = Arrays.copyOf(requests, size * 2);
+                }
+                Integer user = userIds.computeIfAbsent(line.substring(0, first).trim(), key -> userIds.size());
+                if(user >= MAX_USERS) {
+                    throw new IllegalArgumentException("Trace has more than " + MAX_USERS + " users");
+                }
+                users[size] = user;
+                times[size] = Long.parseLong(line.substring(first + 1, second).trim());
+                requests[size] = parseType(line.substring(second + 1).trim(), lineNumber);
+                start = Math.min(start, times[size]);
+                ++size;
+            }
+        }
+
+        long[] events = new long[size];
+        for(int i = 0; i < size; ++i) {
+            long time = times[i] - start;
+            if(time > TIME_MASK) {
+                throw new IllegalArgumentException("Trace is too long");
+            }
+            events[i] = pack(users[i], time, requests[i]);
+        }
+        Arrays.sort(events);
+        return new ActivityTrace(size == 0 ? 0 : start, events, userIds.size());
+    }
+
+    private static boolean parseType(String type, int lineNumber) {
+        if("request".equals(type)) {
+            return true;
+        } else if("input".equals(type)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Invalid event type at line " + lineNumber + ": " + type);
+    }
+
+    /**
+     * Generate trace of office workers: users arrive during first hours, work in bursts of input with some server
+     * requests, take breaks of varying length and leave after a working day.
+     * @param users Amount of users
+     * @param seed Seed of random values, same seed generates same trace
+     * @return Generated trace
+     */
+    public static ActivityTrace synthetic(int users, long seed) {
+        if(users > MAX_USERS) {
+            throw new IllegalArgumentException("Trace has more than " + MAX_USERS + " users");
+        }
+        Random random = new Random(seed);
+        long[] events = new long[1024];
+        int size = 0;
+
+        for(int user = 0; user < users; ++user) {
+            double time = random.nextDouble() * 2 * HOUR_MS;
+            double leave = time + (6 + random.nextDouble() * 4) * HOUR_MS;
+            boolean loaded = false;
+            while(time < leave) {
+                if(size == events.length) {
+                    events = Arrays.copyOf(events, size * 2);
+                }
+                // Page load, then mostly input with occasional round-trips to server
+                boolean request = !loaded || random.nextDouble() < 0.15;
+                loaded = true;
+                events[size++] = pack(user, (long)time, request);
+
+                double pause = random.nextDouble();
+                if(pause < 0.005) {
+                    // Lunch or meeting
+                    time += (30 + random.nextDouble() * 60) * 60000.0;
+                } else if(pause < 0.03) {
+                    // Short break, sometimes longer than timeout
+                    time += exponential(random, 12 * 60000.0);
+                } else {
+                    time += exponential(random, 25000.0);
+                }
+            }
+        }
+        return new ActivityTrace(0, Arrays.copyOf(events, size), users);
+    }
+
+    private static double exponential(Random random, double mean) {
+        return -Math.log(1.0 - random.nextDouble()) * mean;
+    }
+
+    static long pack(int user, long time, boolean request) {
+        return ((long)user << (TIME_BITS + TYPE_BITS)) | (time << TYPE_BITS) | (request ? REQUEST : 0L);
+    }
+
+    /**
+     * Time of packed event
+     * @param event Packed event
+     * @return Milliseconds since start of trace
+     */
+    public static long time(long event) {
+        return (event >>> TYPE_BITS) & TIME_MASK;
+    }
+
+    /**
+     * Check if packed event is request to server
+     * @param event Packed event
+     * @return true if request, false if input handled in browser
+     */
+    public static boolean isRequest(long event) {
+        return (event & REQUEST) != 0;
+    }
+
+    static int user(long event) {
+        return (int)(event >>> (TIME_BITS + TYPE_BITS));
+    }
+
+    /**
+     * Get packed events, ordered by user and time. Returned array must not be modified.
+     * @return Packed events
+     */
+    public long[] getEvents() {
+        return events;
+    }
+
+    public int getUsers() {
+        return userOffsets.length - 1;
+    }
+
+    /**
+     * Index of first event of given user
+     * @param user Index of user
+     * @return Index in events, events of user end at first event of next user
+     */
+    public int getFirstEvent(int user) {
+        return userOffsets[user];
+    }
+
+    public int size() {
+        return events.length;
+    }
+
+    /**
+     * Time of first event in trace
+     * @return Milliseconds since epoch, zero for generated traces
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Time of last event in trace
+     * @return Milliseconds since start of trace
+     */
+    public long getDuration() {
+        return duration;
+    }
+}
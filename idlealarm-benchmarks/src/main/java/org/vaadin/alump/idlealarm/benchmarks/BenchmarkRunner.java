@@ -0,0 +1,33 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of benchmark jar. Takes the same arguments as JMH, and always adds GC profiler so that allocation rate
+ * is reported with throughput.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if(commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        Runner runner = new Runner(options);
+        if(commandLine.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vaadin.server.Constants;
+import com.vaadin.server.DefaultDeploymentConfiguration;
+import com.vaadin.server.ServiceException;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinServlet;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.server.WrappedSession;
+import com.vaadin.ui.UI;
+
+/**
+ * Creates Vaadin services, sessions and UIs without servlet container. Sessions are kept in memory, and idle
+ * sessions are closed (required by IdleAlarm).
+ */
+public class BenchmarkSessions {
+
+    public static final String SERVICE_NAME = "idlealarm-benchmark";
+
+    public static final int DEFAULT_MAX_INACTIVE_INTERVAL = 1800;
+
+    private static final VaadinRequest REQUEST = (VaadinRequest)Proxy.newProxyInstance(
+            BenchmarkSessions.class.getClassLoader(), new Class[] { VaadinRequest.class }, (proxy, method, args) -> null);
+
+    /**
+     * Wrapped session that only stores attributes
+     */
+    public static class MemorySession implements WrappedSession {
+        private final Map<String,Object> attributes = new HashMap<>();
+        private int maxInactiveInterval;
+
+        public MemorySession(int maxInactiveInterval) {
+            this.maxInactiveInterval = maxInactiveInterval;
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            return maxInactiveInterval;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return attributes.keySet();
+        }
+
+        @Override
+        public void invalidate() {
+            attributes.clear();
+        }
+
+        @Override
+        public String getId() {
+            return Integer.toHexString(System.identityHashCode(this));
+        }
+
+        @Override
+        public long getCreationTime() {
+            return 0L;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            return 0L;
+        }
+
+        @Override
+        public boolean isNew() {
+            return false;
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            attributes.remove(name);
+        }
+
+        @Override
+        public void setMaxInactiveInterval(int interval) {
+            maxInactiveInterval = interval;
+        }
+    }
+
+    /**
+     * UI without content
+     */
+    public static class EmptyUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            // nothing to initialize
+        }
+    }
+
+    /**
+     * Create service that closes idle sessions, in production mode
+     * @return Service
+     * @throws ServiceException If service can not be created
+     */
+    public static VaadinServletService createService() throws ServiceException {
+        Properties properties = new Properties();
+        properties.setProperty(Constants.SERVLET_PARAMETER_CLOSE_IDLE_SESSIONS, "true");
+        properties.setProperty(Constants.SERVLET_PARAMETER_PRODUCTION_MODE, "true");
+        return new VaadinServletService(new VaadinServlet(),
+                new DefaultDeploymentConfiguration(BenchmarkSessions.class, properties)) {
+            @Override
+            public String getServiceName() {
+                return SERVICE_NAME;
+            }
+        };
+    }
+
+    /**
+     * Create session of given service. Session is not locked.
+     * @param service Service of session
+     * @param maxInactiveInterval Max inactive interval in seconds
+     * @return Session
+     */
+    public static VaadinSession createSession(VaadinServletService service, int maxInactiveInterval) {
+        MemorySession wrappedSession = new MemorySession(maxInactiveInterval);
+        wrappedSession.setAttribute(service.getServiceName() + ".lock", new ReentrantLock());
+        VaadinSession session = new VaadinSession(service);
+        session.refreshTransients(wrappedSession, service);
+        return session;
+    }
+
+    /**
+     * Create UI to given session. Session has to be locked.
+     * @param session Session of UI
+     * @return Initialized UI
+     */
+    public static UI createUI(VaadinSession session) {
+        return createUI(session, new EmptyUI());
+    }
+
+    /**
+     * Initialize given UI and add it to given session. Session has to be locked.
+     * @param session Session of UI
+     * @param ui UI not yet initialized
+     * @return Initialized UI
+     */
+    public static UI createUI(VaadinSession session, UI ui) {
+        ui.setSession(session);
+        ui.doInit(REQUEST, session.getNextUIid(), null);
+        session.addUI(ui);
+        return ui;
+    }
+}
@@ -0,0 +1,72 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.server.ServerRpcManager;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.shared.MouseEventDetails;
+import com.vaadin.ui.UI;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.vaadin.alump.idlealarm.IdleAlarm;
+import org.vaadin.alump.idlealarm.IdleClickListener;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmServerRpc;
+
+/**
+ * Benchmarks adding buttons and dispatching button clicks received from client
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdleAlarmButtonBenchmark {
+
+    @Param({ "1", "5" })
+    public int buttons;
+
+    private VaadinSession session;
+    private IdleAlarm alarm;
+    private IdleAlarmServerRpc rpc;
+    private IdleClickListener listener;
+    private MouseEventDetails details;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws Exception {
+        VaadinServletService service = BenchmarkSessions.createService();
+        session = BenchmarkSessions.createSession(service, BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL);
+        session.lock();
+        UI ui = BenchmarkSessions.createUI(session);
+        listener = blackhole::consume;
+        alarm = IdleAlarm.get(ui);
+        for(int i = 0; i < buttons; ++i) {
+            alarm.addButton("Button " + i, listener);
+        }
+        // Implementation registered by IdleAlarm, called as RPC framework would call it
+        rpc = ServerRpcManager.getRpcProxy(alarm, IdleAlarmServerRpc.class);
+        details = new MouseEventDetails();
+        details.setButton(MouseEventDetails.MouseButton.LEFT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.unlock();
+    }
+
+    @Benchmark
+    public IdleAlarm addButtons() {
+        alarm.removeButtons();
+        for(int i = 0; i < buttons; ++i) {
+            alarm.addButton("Button " + i, listener);
+        }
+        return alarm;
+    }
+
+    @Benchmark
+    public void buttonClicked() {
+        // First button added in setup
+        rpc.buttonClicked(1, details);
+    }
+}
@@ -0,0 +1,73 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.shared.ui.ContentMode;
+import org.openjdk.jmh.annotations.*;
+import org.vaadin.alump.idlealarm.IdleAlarm;
+import org.vaadin.alump.idlealarm.client.IdleAlarmMessageUtil;
+import org.vaadin.alump.idlealarm.client.IdleMessageTemplate;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmFormatting;
+
+/**
+ * Benchmarks formatting of warning messages. Client side code is run in JVM, so values formatted with browser APIs
+ * (timeout time) are not covered.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdleAlarmFormatBenchmark {
+
+    @Param({ "default", "countdown", "html" })
+    public String template;
+
+    private String formatting;
+    private IdleMessageTemplate compiled;
+    private int secondsToTimeout;
+
+    @Setup
+    public void setup() {
+        switch(template) {
+            case "default":
+                formatting = IdleAlarm.DEFAULT_FORMATTING;
+                break;
+            case "countdown":
+                formatting = "Your session will expire in " + IdleAlarmFormatting.MMSS_TO_TIMEOUT + " ("
+                        + IdleAlarmFormatting.MINS_TO_TIMEOUT + " minutes). You have been idle for "
+                        + IdleAlarmFormatting.SECS_SINCE_RESET + " of allowed "
+                        + IdleAlarmFormatting.SECS_MAX_IDLE_TIMEOUT + " seconds.";
+                break;
+            case "html":
+                formatting = "<p class=\"warning\"><b>Session expires in " + IdleAlarmFormatting.SECS_TO_TIMEOUT
+                        + " seconds</b></p><p>Idle for <span class=\"idle\">"
+                        + IdleAlarmFormatting.SECS_SINCE_RESET + "</span> seconds. Click anywhere to continue.</p>";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown template " + template);
+        }
+        compiled = IdleMessageTemplate.compile(formatting, ContentMode.TEXT);
+    }
+
+    /**
+     * Seconds left change between calls, as they do while warning is shown
+     */
+    private int nextSecondsToTimeout() {
+        secondsToTimeout = secondsToTimeout > 1 ? secondsToTimeout - 1 : 120;
+        return secondsToTimeout;
+    }
+
+    @Benchmark
+    public String format() {
+        int seconds = nextSecondsToTimeout();
+        return IdleAlarmMessageUtil.format(formatting, seconds, 1800 - seconds, 1800);
+    }
+
+    @Benchmark
+    public String formatCompiled() {
+        int seconds = nextSecondsToTimeout();
+        return compiled.format(seconds, 1800 - seconds, 1800);
+    }
+}
@@ -0,0 +1,74 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.server.AbstractExtension;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+import org.openjdk.jmh.annotations.*;
+import org.vaadin.alump.idlealarm.IdleAlarm;
+
+/**
+ * Benchmarks IdleAlarm.get and unload of UIs with other extensions
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdleAlarmLookupBenchmark {
+
+    /**
+     * Extension that does nothing, used to populate UIs
+     */
+    public static class OtherExtension extends AbstractExtension {
+        public OtherExtension(UI ui) {
+            extend(ui);
+        }
+    }
+
+    @Param({ "0", "10", "100" })
+    public int otherExtensions;
+
+    private VaadinSession session;
+    private UI extendedUI;
+    private UI plainUI;
+
+    @Setup
+    public void setup() throws Exception {
+        VaadinServletService service = BenchmarkSessions.createService();
+        session = BenchmarkSessions.createSession(service, BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL);
+        // Session stays locked by benchmark thread
+        session.lock();
+        extendedUI = createUI();
+        IdleAlarm.get(extendedUI);
+        plainUI = createUI();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.unlock();
+    }
+
+    private UI createUI() {
+        UI ui = BenchmarkSessions.createUI(session);
+        for(int i = 0; i < otherExtensions; ++i) {
+            new OtherExtension(ui);
+        }
+        return ui;
+    }
+
+    @Benchmark
+    public IdleAlarm getExisting() {
+        return IdleAlarm.get(extendedUI);
+    }
+
+    @Benchmark
+    public IdleAlarm getAndUnload() {
+        IdleAlarm alarm = IdleAlarm.get(plainUI);
+        IdleAlarm.unload(plainUI);
+        return alarm;
+    }
+}
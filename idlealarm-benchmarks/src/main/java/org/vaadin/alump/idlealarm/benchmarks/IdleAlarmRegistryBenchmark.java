@@ -0,0 +1,85 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.server.Extension;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+import org.openjdk.jmh.annotations.*;
+import org.vaadin.alump.idlealarm.IdleAlarm;
+
+/**
+ * Benchmarks IdleAlarm.get of session with large amount of UIs, against scan of UI extensions used before the session
+ * scoped registry. UIs are looked up in round-robin order, so lookups do not hit the same UI repeatedly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class IdleAlarmRegistryBenchmark {
+
+    @Param({ "10000", "50000" })
+    public int uis;
+
+    @Param({ "0", "30" })
+    public int otherExtensions;
+
+    private VaadinSession session;
+    private UI[] extendedUIs;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        VaadinServletService service = BenchmarkSessions.createService();
+        session = BenchmarkSessions.createSession(service, BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL);
+        // Session stays locked by benchmark thread
+        session.lock();
+        extendedUIs = new UI[uis];
+        for(int i = 0; i < uis; ++i) {
+            UI ui = BenchmarkSessions.createUI(session);
+            // Alarm is added in the middle of other extensions
+            for(int j = 0; j < otherExtensions; ++j) {
+                new IdleAlarmLookupBenchmark.OtherExtension(ui);
+                if(j == otherExtensions / 2) {
+                    IdleAlarm.get(ui);
+                }
+            }
+            if(otherExtensions == 0) {
+                IdleAlarm.get(ui);
+            }
+            extendedUIs[i] = ui;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.unlock();
+    }
+
+    private UI nextUI() {
+        UI ui = extendedUIs[next];
+        next = next + 1 == extendedUIs.length ? 0 : next + 1;
+        return ui;
+    }
+
+    @Benchmark
+    public IdleAlarm registry() {
+        return IdleAlarm.get(nextUI());
+    }
+
+    /**
+     * Lookup of existing alarm before registry
+     */
+    @Benchmark
+    public IdleAlarm extensionScan() {
+        for(Extension extension : nextUI().getExtensions()) {
+            if(extension instanceof IdleAlarm) {
+                return (IdleAlarm)extension;
+            }
+        }
+        return null;
+    }
+}
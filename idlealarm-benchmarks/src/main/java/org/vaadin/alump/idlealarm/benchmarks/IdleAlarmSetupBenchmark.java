@@ -0,0 +1,80 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+import org.openjdk.jmh.annotations.*;
+import org.vaadin.alump.idlealarm.IdleAlarm;
+import org.vaadin.alump.idlealarm.IdleAlarmConfig;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmFormatting;
+
+/**
+ * Benchmarks construction of IdleAlarm and setup of its state, with shared configuration and with setters
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdleAlarmSetupBenchmark {
+
+    static final String MESSAGE = "Your session will expire in " + IdleAlarmFormatting.MMSS_TO_TIMEOUT
+            + ". Please click anywhere outside this notification to extend session.";
+
+    static final IdleAlarmConfig CONFIG = IdleAlarmConfig.builder()
+            .setSecondsBefore(120)
+            .setMessage(MESSAGE)
+            .setCountdown(true)
+            .setCloseButtonEnabled(true)
+            .addStyleName(IdleAlarm.COMPACT_STYLING)
+            .addRedirectButton("Log out", "https://example.com/logout")
+            .addRefreshButton("Refresh")
+            .build();
+
+    private VaadinSession session;
+    private UI ui;
+
+    @Setup
+    public void setup() throws Exception {
+        VaadinServletService service = BenchmarkSessions.createService();
+        session = BenchmarkSessions.createSession(service, BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL);
+        session.lock();
+        ui = BenchmarkSessions.createUI(session);
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.unlock();
+    }
+
+    @Benchmark
+    public IdleAlarm constructDefault() {
+        IdleAlarm alarm = IdleAlarm.get(ui);
+        IdleAlarm.unload(ui);
+        return alarm;
+    }
+
+    @Benchmark
+    public IdleAlarm constructWithConfig() {
+        IdleAlarm alarm = IdleAlarm.get(ui, CONFIG);
+        IdleAlarm.unload(ui);
+        return alarm;
+    }
+
+    @Benchmark
+    public IdleAlarm constructWithSetters() {
+        IdleAlarm alarm = IdleAlarm.get(ui)
+                .setSecondsBefore(120)
+                .setMessage(MESSAGE)
+                .setCountdown(true)
+                .setCloseButtonEnabled(true)
+                .addStyleName(IdleAlarm.COMPACT_STYLING)
+                .addRedirectButton("Log out", "https://example.com/logout")
+                .addRefreshButton("Refresh");
+        IdleAlarm.unload(ui);
+        return alarm;
+    }
+}
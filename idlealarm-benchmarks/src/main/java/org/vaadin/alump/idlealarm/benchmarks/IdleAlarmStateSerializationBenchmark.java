@@ -0,0 +1,95 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.server.EncodeResult;
+import com.vaadin.server.JsonCodec;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.UI;
+import elemental.json.JsonValue;
+import org.openjdk.jmh.annotations.*;
+import org.vaadin.alump.idlealarm.IdleAlarm;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+
+/**
+ * Benchmarks serialization of IdleAlarmState: JSON encoding sent to client (full state and diff against previous
+ * state), and Java serialization used when session is stored.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdleAlarmStateSerializationBenchmark {
+
+    private VaadinSession session;
+    private ConnectorTracker tracker;
+    private IdleAlarmState state;
+    private JsonValue previous;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+
+    @Setup
+    public void setup() throws Exception {
+        VaadinServletService service = BenchmarkSessions.createService();
+        session = BenchmarkSessions.createSession(service, BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL);
+        session.lock();
+        UI ui = BenchmarkSessions.createUI(session);
+        tracker = ui.getConnectorTracker();
+        state = createState();
+        previous = JsonCodec.encode(state, null, IdleAlarmState.class, tracker).getEncodedValue();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.unlock();
+    }
+
+    static IdleAlarmState createState() {
+        IdleAlarmState state = new IdleAlarmState();
+        state.maxInactiveInterval = BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL;
+        state.secondsBefore = 120;
+        state.message = IdleAlarm.DEFAULT_FORMATTING;
+        state.countdownTimeout = true;
+        state.closeEnabled = true;
+        state.styleNames = Collections.singletonList(IdleAlarm.COMPACT_STYLING);
+        for(int i = 1; i <= 2; ++i) {
+            IdleAlarmState.ButtonState button = new IdleAlarmState.ButtonState();
+            button.caption = "Button " + i;
+            button.styleNames = Arrays.asList("primary", "button-" + i);
+            state.buttons.put(i, button);
+        }
+        state.serverLastAccess = System.currentTimeMillis();
+        state.serverTime = state.serverLastAccess;
+        return state;
+    }
+
+    @Benchmark
+    public JsonValue encodeFull() {
+        return JsonCodec.encode(state, null, IdleAlarmState.class, tracker).getEncodedValue();
+    }
+
+    @Benchmark
+    public JsonValue encodeDiff() {
+        // Server time changes on every response
+        state.serverTime += 1000.0;
+        EncodeResult result = JsonCodec.encode(state, previous, IdleAlarmState.class, tracker);
+        return result.getDiff();
+    }
+
+    @Benchmark
+    public int javaSerialization() throws IOException {
+        bytes.reset();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        return bytes.size();
+    }
+}
@@ -0,0 +1,340 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.vaadin.alump.idlealarm.client.IdleAlarmPolicy;
+import org.vaadin.alump.idlealarm.client.IdleDeadline;
+import org.vaadin.alump.idlealarm.client.shared.IdleAlarmState;
+
+/**
+ * Replays recorded user activity against IdleAlarm configurations, to tune warning and keep-alive settings with real
+ * behaviour of users. Deadlines and warning and keep-alive rules are the same {@link IdleDeadline} and
+ * {@link IdleAlarmPolicy} used by IdleAlarmConnector in browser, and timeout listener is called at the same
+ * checkpoints as by IdleTimeoutClientUtil. For each configuration keep-alive requests per user-hour, warnings shown,
+ * expired sessions, sessions expired although user was active, and requests to server in busiest hour are reported
+ * as JSON, one line per configuration.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar org.vaadin.alump.idlealarm.benchmarks.IdleTrafficSimulator
+ * <trace file|synthetic:users> [parameter=value,...]...}, eg. {@code synthetic:10000 secondsBefore=60,120
+ * activityKeepAlive=false,true}. Grid of all combinations of values is simulated, configurations in parallel.
+ * Parameters are maxInactiveInterval, secondsBefore, activityKeepAlive, activityKeepAliveThreshold and
+ * activityKeepAliveWindow. See {@link ActivityTrace} for format of trace file.
+ * <p>
+ * Model: each user has one tab. Request of user resets the timeout, and starts new session if previous one has
+ * expired. Input in browser dismisses the warning, and extends the session when activity keep-alive allows it. Input
+ * during warning is treated as click dismissing it. Session expires when deadline is reached, and is counted as
+ * expired while active if user had input after the last reset, ie. user was idle for less than the timeout. Requests
+ * are trace requests and keep-alives; requests of timeout actions and the latency of requests are not modelled.
+ */
+public class IdleTrafficSimulator {
+
+    private static final List<String> PARAMETERS = Arrays.asList("maxInactiveInterval", "secondsBefore",
+            "activityKeepAlive", "activityKeepAliveThreshold", "activityKeepAliveWindow");
+
+    private static final double HOUR_MS = 3600000.0;
+
+    /**
+     * Result of one configuration
+     */
+    public static class Result {
+        public final IdleAlarmState config;
+        public final int users;
+        public final long events;
+        public final double userHours;
+        public final long sessions;
+        public final long requests;
+        public final long keepAlives;
+        public final long warnings;
+        public final long expired;
+        public final long expiredWhileActive;
+        public final long peakHourRequests;
+        public final long nanos;
+
+        public Result(IdleAlarmState config, int users, long events, double userHours, long sessions,
+                long requests, long keepAlives, long warnings, long expired, long expiredWhileActive,
+                long peakHourRequests, long nanos) {
+            this.config = config;
+            this.users = users;
+            this.events = events;
+            this.userHours = userHours;
+            this.sessions = sessions;
+            this.requests = requests;
+            this.keepAlives = keepAlives;
+            this.warnings = warnings;
+            this.expired = expired;
+            this.expiredWhileActive = expiredWhileActive;
+            this.peakHourRequests = peakHourRequests;
+            this.nanos = nanos;
+        }
+
+        public double getEventsPerSecond() {
+            return nanos == 0 ? 0.0 : events * 1e9 / nanos;
+        }
+
+        /**
+         * Configuration and results as JSON object
+         */
+        public String toJson() {
+            return String.format(Locale.ROOT, "{\"maxInactiveInterval\":%d,\"secondsBefore\":%d,"
+                    + "\"activityKeepAlive\":%b,\"activityKeepAliveThreshold\":%d,\"activityKeepAliveWindow\":%d,"
+                    + "\"users\":%d,\"userHours\":%.1f,\"sessions\":%d,\"requests\":%d,\"keepAlives\":%d,"
+                    + "\"keepAlivesPerUserHour\":%.3f,\"warnings\":%d,\"expired\":%d,\"expiredWhileActive\":%d,"
+                    + "\"peakHourRequests\":%d,\"events\":%d,\"eventsPerSecond\":%.0f}",
+                    config.maxInactiveInterval, config.secondsBefore, config.activityKeepAlive,
+                    config.activityKeepAliveThreshold, config.activityKeepAliveWindow, users, userHours, sessions,
+                    requests, keepAlives, userHours > 0 ? keepAlives / userHours : 0.0, warnings, expired,
+                    expiredWhileActive, peakHourRequests, events, getEventsPerSecond());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length == 0) {
+            System.err.println("Usage: IdleTrafficSimulator <trace file|synthetic:users> [parameter=value,...]...");
+            System.exit(1);
+        }
+
+        ActivityTrace trace = args[0].startsWith("synthetic:")
+                ? ActivityTrace.synthetic(Integer.parseInt(args[0].substring("synthetic:".length())), 1L)
+                : ActivityTrace.read(Paths.get(args[0]));
+        List<IdleAlarmState> grid = createGrid(Arrays.copyOfRange(args, 1, args.length));
+
+        // Warm up, so that results do not include JIT
+        simulate(trace, grid.get(0));
+
+        PrintStream out = System.out;
+        long started = System.nanoTime();
+        List<Result> results = grid.parallelStream().map(config -> simulate(trace, config))
+                .collect(Collectors.toList());
+        long nanos = System.nanoTime() - started;
+        results.forEach(result -> out.println(result.toJson()));
+        out.println(String.format(Locale.ROOT, "{\"configurations\":%d,\"events\":%d,\"eventsPerSecond\":%.0f}",
+                grid.size(), (long)trace.size() * grid.size(), (double)trace.size() * grid.size() * 1e9 / nanos));
+    }
+
+    /**
+     * Create configurations of all combinations of given values. Combinations where warning would not be shown
+     * before timeout are skipped.
+     * @param args Values of parameters as {@code name=value,value}
+     * @return Configurations
+     * @throws IllegalArgumentException If parameter is unknown
+     */
+    static List<IdleAlarmState> createGrid(String[] args) throws IllegalArgumentException {
+        IdleAlarmState defaults = new IdleAlarmState();
+        Map<String,String[]> values = new LinkedHashMap<>();
+        values.put("maxInactiveInterval", new String[] {
+                Integer.toString(BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL) });
+        values.put("secondsBefore", new String[] { Integer.toString(defaults.secondsBefore) });
+        values.put("activityKeepAlive", new String[] { Boolean.toString(defaults.activityKeepAlive) });
+        values.put("activityKeepAliveThreshold", new String[] {
+                Integer.toString(defaults.activityKeepAliveThreshold) });
+        values.put("activityKeepAliveWindow", new String[] { Integer.toString(defaults.activityKeepAliveWindow) });
+        for(String arg : args) {
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg : arg.substring(0, separator);
+            if(separator < 0 || !PARAMETERS.contains(name)) {
+                throw new IllegalArgumentException("Invalid parameter " + arg + ", parameters are " + PARAMETERS);
+            }
+            values.put(name, arg.substring(separator + 1).split(","));
+        }
+
+        List<IdleAlarmState> grid = new ArrayList<>();
+        for(String maxInactiveInterval : values.get("maxInactiveInterval")) {
+            for(String secondsBefore : values.get("secondsBefore")) {
+                for(String activityKeepAlive : values.get("activityKeepAlive")) {
+                    for(String threshold : values.get("activityKeepAliveThreshold")) {
+                        for(String window : values.get("activityKeepAliveWindow")) {
+                            IdleAlarmState config = new IdleAlarmState();
+                            config.maxInactiveInterval = Integer.parseInt(maxInactiveInterval);
+                            config.secondsBefore = Integer.parseInt(secondsBefore);
+                            config.activityKeepAlive = Boolean.parseBoolean(activityKeepAlive);
+                            config.activityKeepAliveThreshold = Integer.parseInt(threshold);
+                            config.activityKeepAliveWindow = Integer.parseInt(window);
+                            if(config.secondsBefore < config.maxInactiveInterval) {
+                                grid.add(config);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if(grid.isEmpty()) {
+            throw new IllegalArgumentException("No valid configurations, secondsBefore must be less than "
+                    + "maxInactiveInterval");
+        }
+        return grid;
+    }
+
+    /**
+     * Replay trace with given configuration
+     * @param trace Activity of users
+     * @param config Configuration of IdleAlarm, maxInactiveInterval has to be set
+     * @return Result of simulation
+     */
+    public static Result simulate(ActivityTrace trace, IdleAlarmState config) {
+        long started = System.nanoTime();
+        UserSimulation simulation = new UserSimulation(config,
+                trace.getDuration() + 2.0 * config.maxInactiveInterval * 1000.0);
+        long[] events = trace.getEvents();
+        double userMillis = 0.0;
+        for(int user = 0; user < trace.getUsers(); ++user) {
+            int first = trace.getFirstEvent(user);
+            int end = trace.getFirstEvent(user + 1);
+            if(first < end) {
+                simulation.run(events, first, end);
+                userMillis += ActivityTrace.time(events[end - 1]) - ActivityTrace.time(events[first]);
+            }
+        }
+        long nanos = System.nanoTime() - started;
+
+        return new Result(config, trace.getUsers(), trace.size(), userMillis / HOUR_MS, simulation.sessions,
+                simulation.requests, simulation.keepAlives, simulation.warnings, simulation.expired,
+                simulation.expiredWhileActive, Arrays.stream(simulation.hourlyRequests).max().orElse(0), nanos);
+    }
+
+    /**
+     * Simulates users one at a time. State of user is reset when next user is simulated, so nothing is allocated
+     * per event.
+     */
+    private static class UserSimulation {
+        private final IdleAlarmState config;
+        private final int[] checkpoints;
+        private final IdleDeadline deadline;
+        private final long[] hourlyRequests;
+
+        private IdleAlarmPolicy policy;
+        private boolean alive;
+        private boolean warning;
+        private double lastInput;
+        // Time when timeout listener is called next, as scheduled by IdleTimeoutClientUtil
+        private double nextCall;
+
+        private long sessions;
+        private long requests;
+        private long keepAlives;
+        private long warnings;
+        private long expired;
+        private long expiredWhileActive;
+
+        private UserSimulation(IdleAlarmState config, double duration) {
+            this.config = config;
+            // Checkpoints only depend on configuration. Countdown is not simulated, as it only updates DOM.
+            this.checkpoints = new IdleAlarmPolicy(config).getCheckpoints();
+            this.deadline = new IdleDeadline(config.maxInactiveInterval, 0.0);
+            this.hourlyRequests = new long[(int)(duration / HOUR_MS) + 2];
+        }
+
+        private void run(long[] events, int first, int end) {
+            // Policy tracks keep-alives of one page
+            policy = new IdleAlarmPolicy(config);
+            alive = false;
+            warning = false;
+            lastInput = Double.NEGATIVE_INFINITY;
+
+            for(int i = first; i < end; ++i) {
+                long event = events[i];
+                double time = ActivityTrace.time(event);
+                advance(time);
+                if(ActivityTrace.isRequest(event)) {
+                    request(time);
+                } else {
+                    input(time);
+                }
+            }
+            // User left, session is kept until it expires
+            advance(Double.POSITIVE_INFINITY);
+        }
+
+        private void advance(double time) {
+            while(alive && nextCall <= time) {
+                update(nextCall);
+            }
+        }
+
+        private void request(double time) {
+            if(!alive) {
+                alive = true;
+                ++sessions;
+            }
+            countRequest(time);
+            reset(time);
+        }
+
+        private void input(double time) {
+            if(!alive) {
+                // Page of expired session
+                return;
+            }
+            lastInput = time;
+            if(warning) {
+                // As IdleAlarmConnector.dismissed
+                warning = false;
+                if(!config.activityKeepAlive || policy.acquireActivityKeepAlive(time)) {
+                    keepAlive(time);
+                }
+            } else if(policy.isActivityKeepAliveTime(deadline.secondsToTimeout(time))
+                    && policy.acquireActivityKeepAlive(time)) {
+                keepAlive(time);
+            }
+        }
+
+        private void keepAlive(double time) {
+            ++keepAlives;
+            countRequest(time);
+            reset(time);
+        }
+
+        private void countRequest(double time) {
+            ++requests;
+            ++hourlyRequests[(int)(time / HOUR_MS)];
+        }
+
+        private void reset(double time) {
+            deadline.reset(time);
+            // Listener is called right away after reset, as in IdleTimeoutClientUtil
+            update(time);
+        }
+
+        /**
+         * Timeout listener, as IdleAlarmConnector.onIdleTimeoutUpdate
+         */
+        private void update(double now) {
+            int secondsToTimeout = deadline.secondsToTimeout(now);
+            if(secondsToTimeout == 0) {
+                expire();
+                return;
+            }
+            if(policy.isActivityCheckTime(secondsToTimeout) && lastInput > deadline.getLastReset()
+                    && policy.acquireActivityKeepAlive(now)) {
+                keepAlive(now);
+                return;
+            }
+
+            if(policy.isWarningTime(secondsToTimeout)) {
+                if(!warning) {
+                    warning = true;
+                    ++warnings;
+                }
+            } else {
+                warning = false;
+            }
+            nextCall = now + Math.ceil(deadline.nextCallDelay(now, checkpoints, 0));
+        }
+
+        private void expire() {
+            alive = false;
+            warning = false;
+            ++expired;
+            if(lastInput > deadline.getLastReset()) {
+                ++expiredWhileActive;
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.ComboBox;
+import com.vaadin.ui.FormLayout;
+import com.vaadin.ui.Grid;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+import org.vaadin.alump.idlealarm.IdleAlarm;
+import org.vaadin.alump.idlealarm.IdleAlarmConfig;
+import org.vaadin.alump.idlealarm.IdleUIPassivator;
+
+/**
+ * Measures heap released by IdleUIPassivator and latency of restoring passivated UIs. For each amount of sessions,
+ * N sessions with one form UI (fields, combo box, grid and IdleAlarm) are created, all UIs are passivated and then
+ * restored. Retained heap per session while live and passivated, bytes stored per UI, and passivation and restore
+ * times are reported as JSON, one line per measurement.
+ * <p>
+ * Usage: {@code java -Xmx4g -cp benchmarks.jar org.vaadin.alump.idlealarm.benchmarks.PassivationHarness
+ * [sessions,...]}, eg. {@code 1000,10000}.
+ * <p>
+ * Retained heap is resolved from used heap after full GCs, so run with enough heap and without other load. UIs are
+ * stored to temporary directory, so restore latency includes reading from page cache, not from disk.
+ */
+public class PassivationHarness {
+
+    private static final int[] DEFAULT_SESSIONS = { 1000, 10000 };
+
+    private static final IdleAlarmConfig CONFIG = IdleAlarmConfig.builder()
+            .setSecondsBefore(120)
+            .setCountdown(true)
+            .addRefreshButton("Refresh")
+            .build();
+
+    private static final List<String> ITEMS = IntStream.range(0, 200).mapToObj(i -> "Item " + i)
+            .collect(Collectors.toList());
+
+    /**
+     * UI with typical form content
+     */
+    public static class FormUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            FormLayout form = new FormLayout();
+            for(int i = 0; i < 20; ++i) {
+                form.addComponent(new TextField("Field " + i, "Value " + i));
+            }
+            ComboBox<String> comboBox = new ComboBox<>("Choice", ITEMS);
+            form.addComponent(comboBox);
+
+            Grid<String> grid = new Grid<>();
+            grid.addColumn(String::toString).setCaption("Item");
+            grid.setItems(ITEMS);
+
+            setContent(new VerticalLayout(new Label("Form"), form, grid));
+            IdleAlarm.get(this, CONFIG);
+        }
+    }
+
+    /**
+     * Result of one measurement
+     */
+    public static class Measurement {
+        public final int sessions;
+        public final double liveRetainedBytes;
+        public final double passivatedRetainedBytes;
+        public final double storedBytes;
+        public final double passivateNanos;
+        public final double restoreMeanNanos;
+        public final long restoreMedianNanos;
+        public final long restore99thNanos;
+
+        public Measurement(int sessions, double liveRetainedBytes, double passivatedRetainedBytes,
+                double storedBytes, double passivateNanos, long[] restoreNanos) {
+            this.sessions = sessions;
+            this.liveRetainedBytes = liveRetainedBytes;
+            this.passivatedRetainedBytes = passivatedRetainedBytes;
+            this.storedBytes = storedBytes;
+            this.passivateNanos = passivateNanos;
+            long[] sorted = restoreNanos.clone();
+            Arrays.sort(sorted);
+            this.restoreMeanNanos = Arrays.stream(sorted).average().orElse(0.0);
+            this.restoreMedianNanos = percentile(sorted, 0.5);
+            this.restore99thNanos = percentile(sorted, 0.99);
+        }
+
+        /**
+         * Values per session as JSON object
+         */
+        public String toJson() {
+            return String.format(Locale.ROOT, "{\"component\":\"IdleUIPassivator\",\"sessions\":%d,"
+                    + "\"liveRetainedBytes\":%.1f,\"passivatedRetainedBytes\":%.1f,\"heapReduction\":%.3f,"
+                    + "\"storedBytes\":%.1f,\"passivateNanos\":%.1f,"
+                    + "\"restoreMeanNanos\":%.1f,\"restoreMedianNanos\":%d,\"restore99thNanos\":%d}",
+                    sessions, liveRetainedBytes, passivatedRetainedBytes,
+                    1.0 - passivatedRetainedBytes / liveRetainedBytes, storedBytes, passivateNanos,
+                    restoreMeanNanos, restoreMedianNanos, restore99thNanos);
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            return sorted.length == 0 ? 0L : sorted[(int)Math.min(sorted.length - 1, percentile * sorted.length)];
+        }
+    }
+
+    private final VaadinServletService service;
+    private final IdleUIPassivator passivator;
+
+    public PassivationHarness() throws Exception {
+        this.service = BenchmarkSessions.createService();
+        this.passivator = IdleUIPassivator.install(service, BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sessions = args.length > 0 ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+                : DEFAULT_SESSIONS;
+
+        PassivationHarness harness = new PassivationHarness();
+        PrintStream out = System.out;
+        try {
+            // Warm up code paths, so times do not include class loading and JIT
+            harness.measure(Math.min(1000, sessions[0]));
+            for(int amount : sessions) {
+                out.println(harness.measure(amount).toJson());
+            }
+        } finally {
+            IdleUIPassivator.uninstall(harness.service);
+        }
+    }
+
+    /**
+     * Passivate and restore UIs of given amount of sessions
+     * @param amount Amount of sessions created
+     * @return Measurement, values are per session
+     */
+    public Measurement measure(int amount) {
+        List<VaadinSession> sessions = new ArrayList<>(amount);
+        int[] uiIds = new int[amount];
+
+        long emptyHeap = SessionFootprintHarness.usedHeap();
+        for(int i = 0; i < amount; ++i) {
+            VaadinSession session = BenchmarkSessions.createSession(service,
+                    BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL);
+            session.lock();
+            try {
+                UI ui = BenchmarkSessions.createUI(session, new FormUI());
+                // As if initial response was written to client
+                ui.getConnectorTracker().markAllConnectorsClean();
+                uiIds[i] = ui.getUIId();
+            } finally {
+                session.unlock();
+            }
+            sessions.add(session);
+        }
+        long liveHeap = SessionFootprintHarness.usedHeap();
+
+        long started = System.nanoTime();
+        for(VaadinSession session : sessions) {
+            session.lock();
+            try {
+                if(!passivator.passivate(session.getUIs().iterator().next())) {
+                    throw new IllegalStateException("UI was not passivated");
+                }
+            } finally {
+                session.unlock();
+            }
+        }
+        long passivateNanos = System.nanoTime() - started;
+        double storedBytes = passivator.getPassivatedBytes() / (double)amount;
+        long passivatedHeap = SessionFootprintHarness.usedHeap();
+
+        long[] restoreNanos = new long[amount];
+        for(int i = 0; i < amount; ++i) {
+            VaadinSession session = sessions.get(i);
+            session.lock();
+            try {
+                long restoreStarted = System.nanoTime();
+                if(passivator.restore(session, uiIds[i]) == null) {
+                    throw new IllegalStateException("UI was not restored");
+                }
+                restoreNanos[i] = System.nanoTime() - restoreStarted;
+            } finally {
+                session.unlock();
+            }
+        }
+
+        Measurement measurement = new Measurement(amount, (liveHeap - emptyHeap) / (double)amount,
+                (passivatedHeap - emptyHeap) / (double)amount, storedBytes, passivateNanos / (double)amount,
+                restoreNanos);
+
+        // Keep sessions reachable until all heap measurements are done
+        if(sessions.size() != amount) {
+            throw new IllegalStateException("Sessions lost");
+        }
+        return measurement;
+    }
+}
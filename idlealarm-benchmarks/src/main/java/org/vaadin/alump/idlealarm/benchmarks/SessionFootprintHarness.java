@@ -0,0 +1,199 @@
+package org.vaadin.alump.idlealarm.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+import org.vaadin.alump.idlealarm.IdleAlarm;
+import org.vaadin.alump.idlealarm.IdleAlarmConfig;
+import org.vaadin.alump.idlealarm.IdleCountdownLabel;
+
+/**
+ * Measures per session cost of IdleAlarm and IdleCountdownLabel. For each amount of sessions, N sessions with one UI
+ * are created, components are attached to all UIs, and retained heap, serialized size of session and construction
+ * time are reported as JSON, one line per measurement.
+ * <p>
+ * Usage: {@code java -Xmx4g -cp benchmarks.jar org.vaadin.alump.idlealarm.benchmarks.SessionFootprintHarness
+ * [sessions,...] [sampled sessions]}, eg. {@code 1000,10000,100000 1000}.
+ * <p>
+ * Retained heap is resolved from used heap after full GCs, so run with enough heap and without other load.
+ * Serialized size is average of sampled sessions.
+ */
+public class SessionFootprintHarness {
+
+    private static final int[] DEFAULT_SESSIONS = { 1000, 10000, 50000 };
+    private static final int DEFAULT_SAMPLES = 1000;
+
+    // Realistic configuration: countdown, close button and two buttons
+    private static final IdleAlarmConfig CONFIG = IdleAlarmConfig.builder()
+            .setSecondsBefore(120)
+            .setCountdown(true)
+            .setCloseButtonEnabled(true)
+            .addStyleName(IdleAlarm.COMPACT_STYLING)
+            .addRedirectButton("Log out", "https://example.com/logout")
+            .addRefreshButton("Refresh")
+            .build();
+
+    /**
+     * Result of one measurement
+     */
+    public static class Measurement {
+        public final String component;
+        public final int sessions;
+        public final double baseRetainedBytes;
+        public final double componentRetainedBytes;
+        public final double baseSerializedBytes;
+        public final double componentSerializedBytes;
+        public final double constructionNanos;
+
+        public Measurement(String component, int sessions, double baseRetainedBytes, double componentRetainedBytes,
+                double baseSerializedBytes, double componentSerializedBytes, double constructionNanos) {
+            this.component = component;
+            this.sessions = sessions;
+            this.baseRetainedBytes = baseRetainedBytes;
+            this.componentRetainedBytes = componentRetainedBytes;
+            this.baseSerializedBytes = baseSerializedBytes;
+            this.componentSerializedBytes = componentSerializedBytes;
+            this.constructionNanos = constructionNanos;
+        }
+
+        /**
+         * Values per session as JSON object
+         */
+        public String toJson() {
+            return String.format(Locale.ROOT, "{\"component\":\"%s\",\"sessions\":%d,"
+                    + "\"sessionRetainedBytes\":%.1f,\"componentRetainedBytes\":%.1f,"
+                    + "\"sessionSerializedBytes\":%.1f,\"componentSerializedBytes\":%.1f,"
+                    + "\"constructionNanos\":%.1f}",
+                    component, sessions, baseRetainedBytes + componentRetainedBytes, componentRetainedBytes,
+                    baseSerializedBytes + componentSerializedBytes, componentSerializedBytes, constructionNanos);
+        }
+    }
+
+    private final VaadinServletService service;
+    private final int samples;
+
+    public SessionFootprintHarness(int samples) throws Exception {
+        this.service = BenchmarkSessions.createService();
+        this.samples = samples;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sessions = args.length > 0 ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+                : DEFAULT_SESSIONS;
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SAMPLES;
+
+        SessionFootprintHarness harness = new SessionFootprintHarness(samples);
+        PrintStream out = System.out;
+        // Warm up code paths, so construction time does not include class loading and JIT
+        harness.measure("IdleAlarm", Math.min(1000, sessions[0]), ui -> IdleAlarm.get(ui, CONFIG));
+        for(int amount : sessions) {
+            out.println(harness.measure("IdleAlarm", amount, ui -> IdleAlarm.get(ui, CONFIG)).toJson());
+            out.println(harness.measure("IdleCountdownLabel", amount, ui -> ui.setContent(new IdleCountdownLabel()))
+                    .toJson());
+        }
+    }
+
+    /**
+     * Measure cost of component
+     * @param component Name of component reported
+     * @param amount Amount of sessions created
+     * @param attach Function attaching component to UI
+     * @return Measurement, values are per session
+     */
+    public Measurement measure(String component, int amount, Consumer<UI> attach) throws IOException {
+        List<VaadinSession> sessions = new ArrayList<>(amount);
+        List<UI> uis = new ArrayList<>(amount);
+
+        long emptyHeap = usedHeap();
+        for(int i = 0; i < amount; ++i) {
+            VaadinSession session = BenchmarkSessions.createSession(service,
+                    BenchmarkSessions.DEFAULT_MAX_INACTIVE_INTERVAL);
+            session.lock();
+            try {
+                uis.add(BenchmarkSessions.createUI(session));
+            } finally {
+                session.unlock();
+            }
+            sessions.add(session);
+        }
+        long baseHeap = usedHeap();
+        double baseSerialized = serializedSize(sessions);
+
+        long started = System.nanoTime();
+        for(int i = 0; i < amount; ++i) {
+            VaadinSession session = sessions.get(i);
+            session.lock();
+            try {
+                attach.accept(uis.get(i));
+            } finally {
+                session.unlock();
+            }
+        }
+        long constructionNanos = System.nanoTime() - started;
+        long componentHeap = usedHeap();
+        double componentSerialized = serializedSize(sessions) - baseSerialized;
+
+        Measurement measurement = new Measurement(component, amount, (baseHeap - emptyHeap) / (double)amount,
+                (componentHeap - baseHeap) / (double)amount, baseSerialized, componentSerialized,
+                constructionNanos / (double)amount);
+
+        // Keep sessions reachable until all heap measurements are done
+        if(sessions.size() != amount || uis.size() != amount) {
+            throw new IllegalStateException("Sessions lost");
+        }
+        return measurement;
+    }
+
+    private double serializedSize(List<VaadinSession> sessions) throws IOException {
+        int sampled = Math.min(samples, sessions.size());
+        if(sampled == 0) {
+            return 0.0;
+        }
+        long total = 0;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Evenly spread samples over created sessions
+        for(int i = 0; i < sampled; ++i) {
+            VaadinSession session = sessions.get((int)((long)i * sessions.size() / sampled));
+            bytes.reset();
+            session.lock();
+            try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(session);
+            } finally {
+                session.unlock();
+            }
+            total += bytes.size();
+        }
+        return total / (double)sampled;
+    }
+
+    /**
+     * Resolve used heap after full GCs
+     * @return Used heap in bytes
+     */
+    static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // Repeated until usage stops dropping, as one GC does not always collect everything
+        for(int i = 0; i < 10; ++i) {
+            memory.gc();
+            long current = memory.getHeapMemoryUsage().getUsed();
+            if(current >= used) {
+                return Math.min(current, used);
+            }
+            used = current;
+        }
+        return used;
+    }
+}
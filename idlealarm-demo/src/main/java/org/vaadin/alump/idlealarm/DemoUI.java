@@ -9,7 +9,9 @@ import com.vaadin.ui.*;
 import org.vaadin.alump.idlealarm.client.shared.IdleAlarmFormatting;
 import org.vaadin.alump.idlealarm.client.shared.TimeoutAction;
 
+import java.io.IOException;
 import javax.servlet.ServletException;
+import javax.servlet.annotation.WebFilter;
 import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import java.util.HashSet;
@@ -28,6 +30,8 @@ public class DemoUI extends UI {
 
     private static final int IDLE_TIMEOUT_SECONDS = 60;
 
+    private static final int PASSIVATE_AFTER_SECONDS = 20;
+
     private static final String GUIDE = "IdleAlarm add-on is designed to be used with Vaadin's idle timeout feature. "
             + "Add-on adds option to show alarm to user when sessions is about to expire because of long idle period.";
 
@@ -47,6 +51,12 @@ public class DemoUI extends UI {
         protected void servletInitialized() throws ServletException {
             super.servletInitialized();
             getService().addSessionInitListener(this);
+            try {
+                // Moves UIs idle for 20 seconds to disk, restored when next request of UI arrives
+                IdleUIPassivator.install(getService(), PASSIVATE_AFTER_SECONDS);
+            } catch(IOException e) {
+                throw new ServletException("Failed to install passivator", e);
+            }
         }
 
         @Override
@@ -55,6 +65,11 @@ public class DemoUI extends UI {
         }
     }
 
+    // Handles lightweight keep-alive requests before those reach Vaadin servlet
+    @WebFilter(value = "/*", asyncSupported = true)
+    public static class KeepAliveFilter extends IdleKeepAliveFilter {
+    }
+
     @Override
     protected void init(VaadinRequest request) {
         VerticalLayout layout = new VerticalLayout();
@@ -119,11 +134,20 @@ public class DemoUI extends UI {
         CheckBox closeButtonEnabled = new CheckBox("Close button");
         CheckBox refreshButtonEnabled = new CheckBox("Refresh button");
         CheckBox redirectButtonEnabled = new CheckBox("Redirect button");
-        row.addComponents(liveCountDownEnabled, closeButtonEnabled, refreshButtonEnabled, redirectButtonEnabled);
+        CheckBox lightweightKeepAlive = new CheckBox("Lightweight keep-alive");
+        CheckBox activityKeepAlive = new CheckBox("Keep-alive on activity");
+        CheckBox crossTabSync = new CheckBox("Sync tabs");
+        CheckBox workerTimer = new CheckBox("Worker timer");
+        row.addComponents(liveCountDownEnabled, closeButtonEnabled, refreshButtonEnabled, redirectButtonEnabled,
+                lightweightKeepAlive, activityKeepAlive, crossTabSync, workerTimer);
         disabledComponents.add(liveCountDownEnabled);
         disabledComponents.add(closeButtonEnabled);
         disabledComponents.add(refreshButtonEnabled);
         disabledComponents.add(redirectButtonEnabled);
+        disabledComponents.add(lightweightKeepAlive);
+        disabledComponents.add(activityKeepAlive);
+        disabledComponents.add(crossTabSync);
+        disabledComponents.add(workerTimer);
 
         row = createRow(layout);
         row.setWidth(100, Unit.PERCENTAGE);
@@ -160,6 +184,10 @@ public class DemoUI extends UI {
                     .setContentMode((ContentMode) contentMode.getValue())
                     .setCountdown(liveCountDownEnabled.getValue())
                     .setCloseButtonEnabled(closeButtonEnabled.getValue())
+                    .setLightweightKeepAlive(lightweightKeepAlive.getValue())
+                    .setActivityKeepAlive(activityKeepAlive.getValue())
+                    .setCrossTabSync(crossTabSync.getValue())
+                    .setWorkerTimer(workerTimer.getValue())
                     .removeButtons()
                     .setTimeoutAction(timeoutAction.getValue());
 
@@ -201,6 +229,13 @@ public class DemoUI extends UI {
         });
         layout.addComponent(resetTimeout);
 
+        Button doubleTimeout = new Button("Double idle timeout", event -> {
+            IdleSessionController controller = IdleSessionController.get(VaadinSession.getCurrent());
+            controller.setMaxInactiveInterval(controller.getMaxInactiveInterval() * 2);
+            Notification.show("Idle timeout is now " + controller.getMaxInactiveInterval() + " seconds");
+        });
+        layout.addComponent(doubleTimeout);
+
         Link gitHub = new Link("IdleAlarm in GitHub (source code, issue tracker...)",
                 new ExternalResource("https://github.com/alump/IdleAlarm"));
         layout.addComponent(gitHub);